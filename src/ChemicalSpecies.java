@@ -1,5 +1,3 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.Objects;
 
@@ -47,35 +45,12 @@ public class ChemicalSpecies {
 
     }
 
+    // reads through the shared SpeciesCatalog, so the file is only parsed again when it changes
     public static ChemicalSpecies[] importDataFromCSV(String fileName, int ventureNumber) throws IOException {
-                BufferedReader      reader = new BufferedReader(new FileReader(fileName));
-                ChemicalSpecies[]   CSVData = new ChemicalSpecies[2];
-                String[]            splitLine;
-                String              line;
-
-                for (int i = 1; i < ventureNumber; ++i) { // skip to the correct place in the file
-                    reader.readLine();
-                    reader.readLine();
-                }
-
-                line = reader.readLine();
-                for (int i = 0; i < 2; ++i) {
-                    if (line == null) throw new IOException("Tried to read past the end of file");
-
-                    splitLine = line.split(",");
-
-                    double[] constructorParameters = new double[splitLine.length - 1];
-
-                    String name = splitLine[0];
-
-                    for (int j = 0; j < constructorParameters.length; ++j) {
-                        constructorParameters[j] = Double.parseDouble(splitLine[j + 1]);
-                    }
-
-                    CSVData[i] = new ChemicalSpecies(name, constructorParameters);
-                    line = reader.readLine();
-                }
-        return CSVData;
+        SpeciesCatalog catalog = SpeciesCatalog.open(fileName);
+        if ((ventureNumber < 1) || (ventureNumber > catalog.getNumberOfVentures()))
+            throw new IOException("Tried to read past the end of file");
+        return catalog.getVenture(ventureNumber);
     }
 
     public ChemicalSpecies clone() {
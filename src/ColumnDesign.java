@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * Result of solving one column design. Designs that could not be solved (no pinch on the curve, reflux below the
+ * minimum and so on) are still reported, with isFeasible() false and the reason in getFailure().
+ */
+public final class ColumnDesign {
+
+    private final int ventureNumber;
+    private final double feedTemperature;
+    private final double refluxMultiplier;
+    private final int numberOfStages;
+    private final int feedTray;
+    private final double refluxRatio;
+    private final double minimumRefluxRatio;
+    private final double distillateFlowRate;
+    private final double bottomsFlowRate;
+    private final String failure;
+    private final TrajectoryBuffer trajectory;
+
+    public ColumnDesign(int ventureNumber, double feedTemperature, double refluxMultiplier, newDistColumn column) {
+        this(ventureNumber, feedTemperature, refluxMultiplier, column, false);
+    }
+
+    public ColumnDesign(int ventureNumber, double feedTemperature, double refluxMultiplier, newDistColumn column,
+                        boolean keepTrayPoints) {
+        this(ventureNumber, feedTemperature, refluxMultiplier, column,
+             keepTrayPoints ? column.getTrajectory() : null);
+    }
+
+    // trajectory is the staircase collected while the column was solved (or null), the design takes it over
+    public ColumnDesign(int ventureNumber, double feedTemperature, double refluxMultiplier, newDistColumn column,
+                        TrajectoryBuffer trajectory) {
+        this.ventureNumber = ventureNumber;
+        this.feedTemperature = feedTemperature;
+        this.refluxMultiplier = refluxMultiplier;
+        this.numberOfStages = (int) Math.ceil(column.getNumberOfTrays());
+        this.feedTray = column.getFeedTray();
+        this.refluxRatio = column.getRefluxRatio();
+        this.minimumRefluxRatio = column.getMinimumRefluxRatio();
+        this.distillateFlowRate = column.getDistillateFlowRate();
+        this.bottomsFlowRate = column.getBottomsFlowRate();
+        this.failure = null;
+        this.trajectory = trajectory;
+    }
+
+    public ColumnDesign(int ventureNumber, double feedTemperature, double refluxMultiplier, String failure) {
+        this.ventureNumber = ventureNumber;
+        this.feedTemperature = feedTemperature;
+        this.refluxMultiplier = refluxMultiplier;
+        this.numberOfStages = -1;
+        this.feedTray = -1;
+        this.refluxRatio = Double.NaN;
+        this.minimumRefluxRatio = Double.NaN;
+        this.distillateFlowRate = Double.NaN;
+        this.bottomsFlowRate = Double.NaN;
+        this.failure = failure;
+        this.trajectory = null;
+    }
+
+    public int getVentureNumber() {
+        return this.ventureNumber;
+    }
+
+    public double getFeedTemperature() {
+        return this.feedTemperature;
+    }
+
+    public double getRefluxMultiplier() {
+        return this.refluxMultiplier;
+    }
+
+    public int getNumberOfStages() {
+        return this.numberOfStages;
+    }
+
+    public int getFeedTray() {
+        return this.feedTray;
+    }
+
+    public double getRefluxRatio() {
+        return this.refluxRatio;
+    }
+
+    public double getMinimumRefluxRatio() {
+        return this.minimumRefluxRatio;
+    }
+
+    public double getDistillateFlowRate() {
+        return this.distillateFlowRate;
+    }
+
+    public double getBottomsFlowRate() {
+        return this.bottomsFlowRate;
+    }
+
+    public boolean isFeasible() {
+        return this.failure == null;
+    }
+
+    public String getFailure() {
+        return this.failure;
+    }
+
+    // the (x, y) corners of the staircase, or null if they were not kept
+    public List<double[]> getTrayPoints() {
+        return (this.trajectory == null) ? null : this.trajectory.toList();
+    }
+
+    // the same corners packed into a buffer, or null if they were not kept
+    public TrajectoryBuffer getTrajectory() {
+        return (this.trajectory == null) ? null : this.trajectory.copy();
+    }
+
+    public static String csvHeader() {
+        return "venture,feedTemperature,refluxMultiplier,stages,feedTray,refluxRatio,minimumRefluxRatio,"
+             + "distillateFlowRate,bottomsFlowRate";
+    }
+
+    // the same columns as csvHeader(), for a ResultWriter
+    public static String[] columnNames() {
+        return csvHeader().split(",");
+    }
+
+    // writes the csvHeader() columns as one row, infeasible designs have -1 stages and NaN flows
+    public void writeTo(ResultWriter writer) throws IOException {
+        writer.value(this.ventureNumber).value(this.feedTemperature).value(this.refluxMultiplier)
+              .value(this.numberOfStages).value(this.feedTray).value(this.refluxRatio).value(this.minimumRefluxRatio)
+              .value(this.distillateFlowRate).value(this.bottomsFlowRate);
+        writer.endRow();
+    }
+
+    public String toCSVRow() {
+        return this.ventureNumber + "," + this.feedTemperature + "," + this.refluxMultiplier + ","
+             + this.numberOfStages + "," + this.feedTray + "," + this.refluxRatio + "," + this.minimumRefluxRatio + ","
+             + this.distillateFlowRate + "," + this.bottomsFlowRate;
+    }
+
+    public String toString() {
+        if (!isFeasible()) {
+            return "Venture " + this.ventureNumber + " at " + this.feedTemperature + " K, reflux x"
+                   + this.refluxMultiplier + ": infeasible (" + this.failure + ")";
+        }
+        return "Venture " + this.ventureNumber + " at " + this.feedTemperature + " K, reflux x" + this.refluxMultiplier
+               + ": " + this.numberOfStages + " stages, feed tray " + this.feedTray + ", R = " + this.refluxRatio
+               + ", D = " + this.distillateFlowRate + ", B = " + this.bottomsFlowRate;
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.IOException;
+
+/*
+ * Holds everything about one venture that does not depend on the operating point: the two species and the fitted
+ * equilibrium curve. Loading and fitting happen once in the constructor, after that solve() only runs the
+ * McCabe-Thiele construction and returns the result, it does not read or write any files. A session never changes
+ * after construction, so one session can be solved from several threads at once. screen() gives a shortcut
+ * estimate of a design for a fraction of the cost of solve().
+ *
+ * When the data is described by a constant relative volatility to within a tolerance, solve() uses the closed form
+ * ConstantVolatilityModel instead of the spline (see EquilibriumModel.select); getEquilibriumModel() tells which.
+ */
+public class ColumnSession {
+
+    private final int ventureNumber;
+    private final ChemicalSpecies[] species;
+    private final CubicSplineInterpolator interpolator;
+    private final EquilibriumModel equilibriumModel;
+    private final double[] volatility;  // for shortcut estimates, see ShortcutDesign.relativeVolatility
+
+    // shares the fitted curve with every other session in the process built from the same data
+    public ColumnSession(String speciesFileName, EquilibriumData data, int ventureNumber, double epsilon)
+                         throws IOException {
+        this(ventureNumber,
+             ChemicalSpecies.importDataFromCSV(speciesFileName, ventureNumber),
+             InterpolatorCache.getDefault().getInterpolator(data.getXData(ventureNumber),
+                                                            data.getYData(ventureNumber), epsilon));
+    }
+
+    // takes the fitted curve from the on-disk cache when the venture's data has been fitted before
+    public ColumnSession(String speciesFileName, EquilibriumData data, int ventureNumber, double epsilon,
+                         SplineCache splineCache) throws IOException {
+        this(ventureNumber,
+             ChemicalSpecies.importDataFromCSV(speciesFileName, ventureNumber),
+             splineCache.getOrFit(data.getXData(ventureNumber), data.getYData(ventureNumber), epsilon));
+    }
+
+    public ColumnSession(int ventureNumber, ChemicalSpecies[] species, CubicSplineInterpolator interpolator)
+                         throws IllegalArgumentException {
+        this(ventureNumber, species, interpolator, ConstantVolatilityModel.DEFAULT_TOLERANCE);
+    }
+
+    /*
+     * volatilityTolerance is the largest distance in y a data point may be from a constant relative volatility
+     * curve for solve() to use that curve; 0 keeps the spline unless the data is exactly at constant volatility.
+     */
+    public ColumnSession(int ventureNumber, ChemicalSpecies[] species, CubicSplineInterpolator interpolator,
+                         double volatilityTolerance) throws IllegalArgumentException {
+        if ((species == null) || (species.length != 2) || (interpolator == null) || (volatilityTolerance < 0))
+            throw new IllegalArgumentException("A session needs two species and an equilibrium curve");
+        this.ventureNumber = ventureNumber;
+        this.species = new ChemicalSpecies[]{species[0].clone(), species[1].clone()};
+        this.interpolator = interpolator;
+        this.equilibriumModel = EquilibriumModel.select(interpolator, volatilityTolerance);
+        ChemicalSpecies light = (species[0].getNormalBoilingPoint() < species[1].getNormalBoilingPoint())
+                                ? species[0] : species[1];
+        this.volatility = ShortcutDesign.relativeVolatility(interpolator.xValues(), interpolator.yValues(),
+                                                            light.getBottomsFractionRequired(),
+                                                            light.getDistillateFractionRequired());
+    }
+
+    public ColumnDesign solve(double feedTemperature) throws IllegalArgumentException {
+        return solve(feedTemperature, new SolveOptions());
+    }
+
+    public ColumnDesign solve(double feedTemperature, SolveOptions options) throws IllegalArgumentException {
+        // only build the staircase when the result keeps it
+        StageConsumer stages = options.getStageConsumer();
+        TrajectoryBuffer trajectory = null;
+        if (options.getKeepTrayPoints()) {
+            trajectory = new TrajectoryBuffer();
+            stages = trajectory.andThen(stages);
+        } else if (stages == null) {
+            stages = StageConsumer.DISCARD;
+        }
+        newDistColumn column = new newDistColumn(feedTemperature, this.species, this.equilibriumModel,
+                                                 options.getRefluxMultiplier(), stages);
+        return new ColumnDesign(this.ventureNumber, feedTemperature, options.getRefluxMultiplier(), column,
+                                trajectory);
+    }
+
+    // Fenske-Underwood-Gilliland estimate of the same design, without stepping off any stages
+    public ShortcutDesign screen(double feedTemperature) throws IllegalArgumentException {
+        return screen(feedTemperature, new SolveOptions());
+    }
+
+    public ShortcutDesign screen(double feedTemperature, SolveOptions options) throws IllegalArgumentException {
+        return new ShortcutDesign(this.ventureNumber, this.species, this.volatility, feedTemperature,
+                                  options.getRefluxMultiplier());
+    }
+
+    public int getVentureNumber() {
+        return this.ventureNumber;
+    }
+
+    public ChemicalSpecies[] getSpecies() {
+        return new ChemicalSpecies[]{this.species[0].clone(), this.species[1].clone()};
+    }
+
+    // the fitted spline, whichever model solve() uses
+    public CubicSplineInterpolator getInterpolator() {
+        return this.interpolator;
+    }
+
+    // the model solve() steps the column against, the spline or a constant relative volatility
+    public EquilibriumModel getEquilibriumModel() {
+        return this.equilibriumModel;
+    }
+}
@@ -0,0 +1,152 @@
+import java.util.Arrays;
+
+/*
+ * Equilibrium curve of a system at constant relative volatility alpha,
+ *
+ *   y = alpha x / (1 + (alpha - 1) x)        and its inverse        x = y / (alpha - (alpha - 1) y)
+ *
+ * Both directions are a few flops with no segment search or root finding, and a straight line meets the curve
+ * where a quadratic in x is zero, so every query the McCabe-Thiele construction makes is closed form.
+ *
+ * fit() estimates alpha from measured points by least squares in y (Gauss-Newton, started from the geometric mean
+ * of the point volatilities) and keeps the residuals, so EquilibriumModel.select() can tell whether the system is
+ * really described by a constant volatility before a solver relies on it.
+ */
+public final class ConstantVolatilityModel implements EquilibriumModel {
+
+    // largest distance in y from a measured point for select() to prefer this model, about the error of the data
+    public static final double DEFAULT_TOLERANCE = 0.005;
+
+    private static final int MAX_ITERATIONS = 100;
+    private static final double ROOT_TOLERANCE = 1e-12;
+
+    private final double relativeVolatility;
+    private final double rmsResidual;
+    private final double maximumResidual;
+
+    public ConstantVolatilityModel(double relativeVolatility) throws IllegalArgumentException {
+        this(relativeVolatility, Double.NaN, Double.NaN);
+    }
+
+    private ConstantVolatilityModel(double relativeVolatility, double rmsResidual, double maximumResidual)
+                                    throws IllegalArgumentException {
+        if (!(relativeVolatility > 0) || Double.isInfinite(relativeVolatility))
+            throw new IllegalArgumentException("Relative volatility must be positive, got " + relativeVolatility);
+        this.relativeVolatility = relativeVolatility;
+        this.rmsResidual = rmsResidual;
+        this.maximumResidual = maximumResidual;
+    }
+
+    /*
+     * Least squares fit of alpha to the points, or null if no point lies strictly inside (0, 1). The pure
+     * component ends carry no information about alpha and do not change the fit.
+     */
+    public static ConstantVolatilityModel fit(double[] xValues, double[] yValues) throws IllegalArgumentException {
+        double alpha = ShortcutDesign.relativeVolatility(xValues, yValues, 0, 1)[0];
+        if (Double.isNaN(alpha)) return null;
+
+        for (int iteration = 0; iteration < MAX_ITERATIONS; ++iteration) {
+            double gradient = 0;
+            double curvature = 0;
+            for (int i = 0; i < xValues.length; ++i) {
+                double x = xValues[i];
+                double denominator = 1 + (alpha - 1) * x;
+                double sensitivity = x * (1 - x) / (denominator * denominator); // dy/dalpha
+                gradient += (yValues[i] - alpha * x / denominator) * sensitivity;
+                curvature += sensitivity * sensitivity;
+            }
+            if (curvature == 0) break;
+            double step = gradient / curvature;
+            double next = (alpha + step > 0) ? alpha + step : alpha / 2; // alpha must stay positive
+            boolean converged = Math.abs(next - alpha) <= 1e-12 * alpha;
+            alpha = next;
+            if (converged) break;
+        }
+
+        double squares = 0;
+        double largest = 0;
+        for (int i = 0; i < xValues.length; ++i) {
+            double residual = yValues[i] - alpha * xValues[i] / (1 + (alpha - 1) * xValues[i]);
+            squares += residual * residual;
+            largest = Math.max(largest, Math.abs(residual));
+        }
+        return new ConstantVolatilityModel(alpha, Math.sqrt(squares / xValues.length), largest);
+    }
+
+    public double getRelativeVolatility() {
+        return this.relativeVolatility;
+    }
+
+    // root mean square distance in y of the fitted points from the curve, NaN if the model was not fitted
+    public double getRmsResidual() {
+        return this.rmsResidual;
+    }
+
+    // largest distance in y of a fitted point from the curve, NaN if the model was not fitted
+    public double getMaximumResidual() {
+        return this.maximumResidual;
+    }
+
+    public double interpolateY(double x) throws IllegalArgumentException {
+        x = CubicSplineInterpolator.clampToUnitRange(x, "X");
+        return this.relativeVolatility * x / (1 + (this.relativeVolatility - 1) * x);
+    }
+
+    public double interpolateX(double y) throws IllegalArgumentException {
+        y = CubicSplineInterpolator.clampToUnitRange(y, "Y");
+        return y / (this.relativeVolatility - (this.relativeVolatility - 1) * y);
+    }
+
+    /*
+     * slope x + intercept = alpha x / (1 + (alpha - 1) x) is the quadratic
+     *   (alpha - 1) slope x^2 + (slope + (alpha - 1) intercept - alpha) x + intercept = 0
+     * and only its roots in [0, 1] are on the curve.
+     */
+    public double firstIntersection(double slope, double intercept, double x0, int direction) {
+        double b = this.relativeVolatility - 1;
+        double[] roots = quadraticRoots(b * slope, slope + b * intercept - this.relativeVolatility, intercept);
+        double closest = NO_INTERSECTION;
+        for (double root : roots) {
+            if ((root < -ROOT_TOLERANCE) || (root > 1 + ROOT_TOLERANCE)) continue;
+            if ((direction > 0) ? (root <= x0 + ROOT_TOLERANCE) : (root >= x0 - ROOT_TOLERANCE)) continue;
+            root = Math.min(1, Math.max(0, root));
+            if ((closest == NO_INTERSECTION) || (Math.abs(root - x0) < Math.abs(closest - x0))) closest = root;
+        }
+        return closest;
+    }
+
+    /*
+     * With u = 1 + (alpha - 1) x the tangency condition y'(x) (xPivot - x) = yPivot - y(x) becomes
+     *   ((alpha - 1) yPivot - alpha) u^2 + 2 alpha u - alpha (1 + (alpha - 1) xPivot) = 0
+     * At alpha = 1 the curve is the diagonal, which no line from a pivot touches at a single point.
+     */
+    public double[] tangentPoints(double xPivot, double yPivot, double lo, double hi) {
+        double alpha = this.relativeVolatility;
+        double b = alpha - 1;
+        if (b == 0) return new double[0];
+        double[] roots = quadraticRoots(b * yPivot - alpha, 2 * alpha, -alpha * (1 + b * xPivot));
+        int count = 0;
+        for (double u : roots) {
+            double x = (u - 1) / b;
+            if ((x >= lo) && (x <= hi)) roots[count++] = x;
+        }
+        Arrays.sort(roots, 0, count);
+        if ((count == 2) && (roots[1] - roots[0] <= ROOT_TOLERANCE)) count = 1;
+        return Arrays.copyOf(roots, count);
+    }
+
+    // real roots of a x^2 + b x + c, in the numerically stable form, a double root reported once
+    private static double[] quadraticRoots(double a, double b, double c) {
+        if (a == 0) return (b == 0) ? new double[0] : new double[]{-c / b};
+        double discriminant = b * b - 4 * a * c;
+        if (discriminant < 0) return new double[0];
+        if (discriminant == 0) return new double[]{-b / (2 * a)};
+        double q = -(b + Math.copySign(Math.sqrt(discriminant), b)) / 2;
+        return (q == 0) ? new double[]{0} : new double[]{q / a, c / q};
+    }
+
+    public String toString() {
+        return "Constant relative volatility " + this.relativeVolatility + ", residuals rms " + this.rmsResidual
+               + " largest " + this.maximumResidual;
+    }
+}
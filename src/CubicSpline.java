@@ -1,12 +1,22 @@
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-
+import java.util.Arrays;
+
+/*
+ * Cubic spline through a set of points, natural unless another SplineEngine is given. Points can be changed,
+ * inserted and removed in place. The arrays are built with room for as many points again and double when full, and
+ * the spline keeps its engine and workspace, so an edit only allocates when an insert outgrows the arrays or an x
+ * value changes, which rebuilds the segment locator (every insert and removal does). A C2 spline couples every
+ * segment, so each edit refits all of them, with one tridiagonal solve. Edits are not thread safe; a spline that is
+ * no longer being edited can be evaluated from several threads at once.
+ */
 public class CubicSpline {
-    private final double[][] parameters;
-    private final double[][] splineEndPoints;
+    private double[][] parameters;
+    private double[][] splineEndPoints;
+    private int numberOfPoints;
     private final double epsilon;
+    private SegmentLocator locator;
+    private final SplineEngine engine;
+    private final SplineWorkspace workspace;
     // Constants //
     private final int X = 0;
     private final int Y = 1;
@@ -17,96 +27,115 @@ public class CubicSpline {
 
     public void printSpline() {
         System.out.print("The values of ai are: ");
-        for (double elem :
-                this.parameters[A]) {
-            System.out.print(elem + "   ");
+        for (int i = 0; i < this.numberOfPoints - 1; ++i) {
+            System.out.print(this.parameters[A][i] + "   ");
         }
     }
 
     public CubicSpline(double[] xValues, double[] yValues, double tolerance) {
+        this(xValues, yValues, tolerance, SplineEngine.natural(), new SplineWorkspace());
+    }
+
+    public CubicSpline(double[] xValues, double[] yValues, double tolerance, SplineEngine engine,
+                       SplineWorkspace workspace) throws IllegalArgumentException {
+        if ((xValues == null) || (xValues.length < 2) || (yValues == null) || (yValues.length != xValues.length)
+        ||  (engine == null) || (workspace == null))
+            throw new IllegalArgumentException("Invalid data passed to constructor");
         this.epsilon = tolerance;
-        this.parameters = new double[4][xValues.length - 1];
-        this.splineEndPoints = new double[2][xValues.length];
+        int capacity = 2 * xValues.length; // room to insert as many points again before growing
+        this.parameters = new double[4][capacity - 1];
+        this.splineEndPoints = new double[2][capacity];
         for (int i = 0; i < xValues.length; ++i) {
             this.splineEndPoints[X][i] = xValues[i];
             this.splineEndPoints[Y][i] = yValues[i];
         }
-        calculateCubicSpline(xValues, yValues);
+        this.numberOfPoints = xValues.length;
+        this.engine = engine;
+        this.workspace = workspace;
+        this.locator = new SegmentLocator(this.splineEndPoints[X], this.numberOfPoints);
+        refit();
     }
 
-    private void calculateCubicSpline(double[] xValues, double[] yValues) { // N + 1 data points
-        int N = xValues.length - 1; // = 11
-        double[] h = new double[N];
-        double[] f = new double[N];
-        double[] g = new double[N - 1];
-        double[] e = new double[N];
-        double[] secondDerivatives = new double[N + 1];
-        double[] r = new double[N];
-        int maxPos = N - 1;
-
-        for (int i = 0; i < N; ++i) {
-            h[i] = xValues[i + 1] - xValues[i];
-        }
-        f[0] = f[maxPos] = 1;
-        for (int i = 1; i < maxPos; ++i) {
-            f[i] = 2 * (h[i - 1] + h[i]);
-        }
-        g[0] = 0;
-        for (int i = 1; i < maxPos; ++i) {
-            g[i] = h[i];
-        }
-        e[maxPos] = 0;
-        for (int i = 1; i < maxPos; ++i) {
-            e[i] = h[i - 1];
-        }
-        r[0] = r[maxPos] = 0;
-        for (int i = 1; i < maxPos; ++i) {
-            r[i] = 6 * (((yValues[i + 1] - yValues[i]) / h[i]) - ((yValues[i] - yValues[i - 1]) / h[i - 1]));
-        }
+    public int getNumberOfPoints() {
+        return this.numberOfPoints;
+    }
 
-        // THOMAS ALGORITHM //
+    public void updatePoint(int index, double x, double y) throws IllegalArgumentException {
+        checkPointIndex(index, this.numberOfPoints - 1);
+        boolean moved = this.splineEndPoints[X][index] != x;
+        this.splineEndPoints[X][index] = x;
+        this.splineEndPoints[Y][index] = y;
+        if (moved) this.locator = new SegmentLocator(this.splineEndPoints[X], this.numberOfPoints);
+        refit();
+    }
 
-        // Decomposition //
-        for (int i = 1; i <= maxPos; ++i) {
-            e[i] = e[i] / f[i - 1];
-            f[i] = f[i] - e[i] * g[i - 1];
+    // the new point becomes point index, index == getNumberOfPoints() appends it
+    public void insertPoint(int index, double x, double y) throws IllegalArgumentException {
+        checkPointIndex(index, this.numberOfPoints);
+        if (this.numberOfPoints == this.splineEndPoints[X].length) {
+            int capacity = 2 * this.numberOfPoints;
+            for (int i = 0; i < 2; ++i) {
+                this.splineEndPoints[i] = Arrays.copyOf(this.splineEndPoints[i], capacity);
+            }
+            this.parameters = new double[4][capacity - 1];
         }
-
-        // Forward Substitution //
-        for (int i = 1; i <= maxPos; ++i) {
-            r[i] = r[i] - e[i] * r[i - 1];
+        for (double[] values : this.splineEndPoints) {
+            System.arraycopy(values, index, values, index + 1, this.numberOfPoints - index);
         }
+        this.splineEndPoints[X][index] = x;
+        this.splineEndPoints[Y][index] = y;
+        this.numberOfPoints++;
+        this.locator = new SegmentLocator(this.splineEndPoints[X], this.numberOfPoints);
+        refit();
+    }
 
-        // Back Substitution //
-        secondDerivatives[maxPos] = r[maxPos] / f[maxPos];
-        for (int i = maxPos; i > 0; --i) {
-            secondDerivatives[i] = (r[i] - g[i - 1] * secondDerivatives[i + 1]) / f[i];
+    public void removePoint(int index) throws IllegalArgumentException {
+        checkPointIndex(index, this.numberOfPoints - 1);
+        if (this.numberOfPoints == 2) throw new IllegalArgumentException("A spline needs at least two points");
+        for (double[] values : this.splineEndPoints) {
+            System.arraycopy(values, index + 1, values, index, this.numberOfPoints - index - 1);
         }
+        this.numberOfPoints--;
+        this.locator = new SegmentLocator(this.splineEndPoints[X], this.numberOfPoints);
+        refit();
+    }
 
-        // End of Thomas Algorithm //
-        for (int i = 0; i < maxPos; ++i) {
-            this.parameters[A][i] = (secondDerivatives[i + 1] - secondDerivatives[i]) / (6 * h[i]);
-            this.parameters[B][i] = secondDerivatives[i] / 2;
-            this.parameters[C][i] = ((yValues[i + 1] - yValues[i]) / h[i]) - (h[i] * secondDerivatives[i] / 2)
-                    - h[i] * ((secondDerivatives[i + 1] + secondDerivatives[i]) / 6);
-            this.parameters[D][i] = yValues[i];
-        }
-        return;
+    private void checkPointIndex(int index, int maximum) throws IllegalArgumentException {
+        if ((index < 0) || (index > maximum))
+            throw new IllegalArgumentException("Point " + index + " is out of range (0," + maximum + ")");
+    }
+
+    private void refit() {
+        this.engine.fitLocal(this.splineEndPoints[X], this.splineEndPoints[Y], this.numberOfPoints, this.parameters,
+                             this.workspace);
     }
 
     public double interpolateY(double x) {
         if (equalsDoubles(1, x)) x = 1; // check if there was a small error calculating x which put it out of range
         if (equalsDoubles(0, x)) x = 0;
         if (x > 1 || x < 0) return -9999; // if the value is more than epsilon out of range then return garbage
-        int i;
-        for (i = 0; i < splineEndPoints[X].length; ++i) {
-            if ((x >= splineEndPoints[X][i]) && (x <= splineEndPoints[X][i + 1])) break;
+        SolverMetrics.SPLINE_EVALUATIONS.increment();
+        return evaluate(this.locator.locate(x), x);
+    }
+
+    // batch version of interpolateY, out[k] receives the value at xs[k]
+    public void interpolateY(double[] xs, double[] out) throws IllegalArgumentException {
+        if ((xs == null) || (out == null) || (out.length < xs.length))
+            throw new IllegalArgumentException("Output array must be at least as long as the input array");
+        SolverMetrics.SPLINE_EVALUATIONS.add(xs.length);
+        SegmentLocator.Cursor cursor = this.locator.cursor();
+        for (int k = 0; k < xs.length; ++k) {
+            double x = xs[k];
+            if (equalsDoubles(1, x)) x = 1;
+            if (equalsDoubles(0, x)) x = 0;
+            out[k] = (x > 1 || x < 0) ? -9999 : evaluate(cursor.locate(x), x);
         }
-        System.out.println("i = " + i);
-        return this.parameters[A][i] * Math.pow(x - splineEndPoints[X][i], 3)
-                + this.parameters[B][i] * Math.pow(x - splineEndPoints[X][i], 2)
-                + this.parameters[C][i] * (x - splineEndPoints[X][i])
-                + this.parameters[D][i];
+    }
+
+    private double evaluate(int i, double x) {
+        double deltaX = x - splineEndPoints[X][i];
+        return ((this.parameters[A][i] * deltaX + this.parameters[B][i]) * deltaX + this.parameters[C][i]) * deltaX
+               + this.parameters[D][i];
     }
 
     public boolean equalsLessThanDoubles(double source, double comparator) {
@@ -123,23 +152,17 @@ public class CubicSpline {
     }
 
     public void exportToCSV(double minX, double maxX, String fileName) throws IOException {
-        double x = minX;
-        double increment = (maxX - minX) / 1000 ;
+        exportToCSV(minX, maxX, CurveSampler.DEFAULT_TOLERANCE, fileName);
+    }
 
-        File file = new File(fileName);
-        if (!file.exists()) {
-            file.createNewFile();
-        }
-        FileWriter writer = new FileWriter(file);
-        BufferedWriter bw = new BufferedWriter(writer);
-
-        String dataPoint;
-        while (x < maxX) {
-            dataPoint = Double.toString(this.interpolateY(x));
-            bw.append(dataPoint).append(",").append(Double.toString(x)).append("\n");
-            x+= increment;
+    // writes y,x rows from minX to maxX inclusive, spaced so the curve is within tolerance of the lines between them
+    public void exportToCSV(double minX, double maxX, double tolerance, String fileName) throws IOException {
+        TrajectoryBuffer points = new CurveSampler(this::interpolateY, tolerance).sample(minX, maxX);
+        try (ResultWriter writer = new ResultWriter(fileName)) {
+            for (int i = 0; i < points.size(); ++i) {
+                writer.writeRow(points.getY(i), points.getX(i));
+            }
         }
-        bw.close();
         System.out.println("Data was written to the file " + fileName);
     }
 }
@@ -1,20 +1,29 @@
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-
-public class CubicSplineInterpolator {
+import java.util.Arrays;
+
+/*
+ * Constrained cubic spline through equilibrium data, with the forward curve y(x), its inverse x(y) and the line
+ * intersections the McCabe-Thiele construction needs. An interpolator is immutable once constructed: every field
+ * is final, the arrays are private copies that are never written after fitting, and point edits return a new
+ * interpolator. Evaluation keeps no state in the interpolator (cursors carry their own), so one instance can be
+ * shared by any number of threads without locking or copying, as InterpolatorCache and ColumnSession do.
+ */
+public class CubicSplineInterpolator implements EquilibriumModel {
     private final double[][] coefficientMatrix; // 4 x 11 matrix of coefficients of cubic equations
-    private final double[][] inverseCoefficientsMatrix; // not final incase user wants to calculate it later?
+    private final double[] inverseSecants; // dx/dy of each segment to seed interpolateX, NaN where the segment turns
     private final double epsilon;
     private final double[] xValues;
     private final double[] yValues;
+    private final SegmentLocator xLocator;
+    private final SegmentLocator yLocator;
 
     private final int A = 0;
     private final int B = 1;
     private final int C = 2;
     private final int D = 3;
 
+    private static final double ROOT_TOLERANCE = 1e-12;
+
     public String toString() {
 
         String string = "The coefficients for each spline section are: \nA: ";
@@ -38,9 +47,17 @@ public class CubicSplineInterpolator {
 
     public CubicSplineInterpolator(double[] xValues, double[] yValues, double epsilon)
                                    throws IllegalArgumentException {
+        this(xValues, yValues, epsilon, new SplineWorkspace((xValues == null) ? 2 : Math.max(2, xValues.length)));
+    }
+
+    // fits with the caller's workspace, so refitting many curves only allocates the new interpolators
+    public CubicSplineInterpolator(double[] xValues, double[] yValues, double epsilon, SplineWorkspace workspace)
+                                   throws IllegalArgumentException {
         if ((xValues == null)
         ||  (yValues == null)
-        ||  (xValues.length != yValues.length))
+        ||  (xValues.length < 2)
+        ||  (xValues.length != yValues.length)
+        ||  (workspace == null))
         throw new IllegalArgumentException("Invalid array parameters to constructor");
 
         this.epsilon = epsilon;
@@ -51,133 +68,312 @@ public class CubicSplineInterpolator {
         this.yValues = new double[yValues.length];
         System.arraycopy(yValues, 0, this.yValues, 0, yValues.length);
 
-        this.coefficientMatrix = calculateCubicSplines(xValues, yValues);
-        this.inverseCoefficientsMatrix = calculateCubicSplines(yValues, xValues);
+        this.xLocator = new SegmentLocator(this.xValues);
+        this.yLocator = new SegmentLocator(this.yValues);
+
+        this.coefficientMatrix = calculateCubicSplines(this.xValues, this.yValues, workspace);
+        this.inverseSecants = inverseSecants(this.xValues, this.yValues, this.coefficientMatrix);
+    }
 
+    /*
+     * Rebuilds an interpolator from coefficients fitted earlier (see SplineCache) without fitting again. The
+     * matrix is 4 x (points - 1) in the same layout as the fitted ones. All the arrays are used as given, not
+     * copied, so the caller must not keep them.
+     */
+    CubicSplineInterpolator(double[] xValues, double[] yValues, double epsilon, double[][] coefficientMatrix)
+                            throws IllegalArgumentException {
+        if ((xValues == null)
+        ||  (yValues == null)
+        ||  (xValues.length != yValues.length)
+        ||  !isCoefficientMatrix(coefficientMatrix, xValues.length - 1))
+        throw new IllegalArgumentException("Invalid array parameters to constructor");
 
+        this.epsilon = epsilon;
+        this.xValues = xValues;
+        this.yValues = yValues;
+        this.xLocator = new SegmentLocator(this.xValues);
+        this.yLocator = new SegmentLocator(this.yValues);
+        this.coefficientMatrix = coefficientMatrix;
+        this.inverseSecants = inverseSecants(this.xValues, this.yValues, this.coefficientMatrix);
     }
 
-    private double[][] calculateCubicSplines(double[] X, double[] Y) {
-        double a, b, c, d;
-        double[][] coefficientMatrix = new double[4][X.length - 1];
-        double firstDerivativeXi = 0;
-        double firstDerivativeXiMinusOne = 0;
-        double secondDerivativeXi = 0;
-        double secondDerivativeXiMinusOne = 0;
-        for (int i = 1; i <= coefficientMatrix[A].length; ++i) {
-
-            // calculate the derivatives //
-            firstDerivativeXi = calculateFirstDerivativeAtXi(X, Y, firstDerivativeXi, i); // arrays are passed by reference so not expensive
-            firstDerivativeXiMinusOne = calculateFirstDerivativeAtXiMinusOne(X, Y, firstDerivativeXi, i);
-            secondDerivativeXiMinusOne = calculateSecondDerivativeXiMinusOne(X, Y, firstDerivativeXi, firstDerivativeXiMinusOne, i);
-            secondDerivativeXi = calculateSecondDerivativeXi(X, Y, firstDerivativeXi, firstDerivativeXiMinusOne, i);
-
-            // calculate spline coefficients //
-            d = (secondDerivativeXi - secondDerivativeXiMinusOne) / (6 * (X[i] - X[i - 1]));
-
-            c = (X[i] * secondDerivativeXiMinusOne - X[i - 1] * secondDerivativeXi)
-                / (2 * (X[i] - X[i - 1]));
-
-            b = (
-                (Y[i] - Y[i - 1])
-                - c * (Math.pow(X[i], 2) - Math.pow(X[i - 1], 2))
-                - d * (Math.pow(X[i], 3) - Math.pow(X[i - 1], 3))
-                )
-                / (X[i] - X[i - 1]);
-
-            a = Y[i - 1] - b * X[i - 1]
-                - c * Math.pow(X[i - 1], 2)
-                - d * Math.pow(X[i - 1], 3);
-
-            // fill the matrix with the calculated coefficients //
-            coefficientMatrix[A][i - 1] = a;
-            coefficientMatrix[B][i - 1] = b;
-            coefficientMatrix[C][i - 1] = c;
-            coefficientMatrix[D][i - 1] = d;
+    private static boolean isCoefficientMatrix(double[][] matrix, int segments) {
+        if ((matrix == null) || (matrix.length != 4)) return false;
+        for (double[] row : matrix) {
+            if ((row == null) || (row.length != segments)) return false;
         }
-        return coefficientMatrix;
+        return true;
     }
 
-    public double calculateFirstDerivativeAtXi(double[] X, double[] Y, double firstDerivativeX1, int i) {
-        if (i == 11) {
-            firstDerivativeX1 = 3 * (Y[i] - Y[i - 1]) / (2 * (X[i] - X[i - 1]))
-                              - (firstDerivativeX1 / 2);
-        } else {
-            firstDerivativeX1 = 2 /
-                    (
-                            ((X[i + 1] - X[i]) / (Y[i + 1] - Y[i]))
-                                    + ((X[i] - X[i - 1]) / (Y[i] - Y[i - 1]))
-                    );
-        }
-        return firstDerivativeX1;
-    }
-
-    public double calculateFirstDerivativeAtXiMinusOne (double[] X, double[] Y, double firstDerivativeX1, int i) {
-        double firstDerivativeX0;
-        if (i == 1) {
-            firstDerivativeX0 = 3 * (Y[i] - Y[i - 1]) / (2 * (X[i] - X[i - 1]))
-                              - (firstDerivativeX1 / 2);
-        } else {
-            firstDerivativeX0 = 2 /
-                    (
-                                ((X[i] - X[i - 1]) / (Y[i] - Y[i - 1]))
-                                + (
-                                  (X[i - 1] - X[i - 2])
-                                  / (Y[i - 1] - Y[i - 2])
-                                  )
-                    );
+    // internal arrays for SplineCache, callers must not modify them
+    double[][] coefficientMatrix() {
+        return this.coefficientMatrix;
+    }
+
+    double[] xValues() {
+        return this.xValues;
+    }
+
+    double[] yValues() {
+        return this.yValues;
+    }
+
+    public double getEpsilon() {
+        return this.epsilon;
+    }
+
+    public int getNumberOfPoints() {
+        return this.xValues.length;
+    }
+
+    /*
+     * Point edits. An interpolator is shared between threads and caches, so an edit returns a new interpolator and
+     * leaves this one untouched. A constrained spline slope only depends on the neighbouring points, so an edit at
+     * point k refits just segments k - 2 to k + 1; the rest of the coefficients are copied over.
+     */
+    public CubicSplineInterpolator withUpdatedPoint(int index, double x, double y) throws IllegalArgumentException {
+        checkPointIndex(index, this.xValues.length - 1);
+        double[] xValues = this.xValues.clone();
+        double[] yValues = this.yValues.clone();
+        xValues[index] = x;
+        yValues[index] = y;
+        double[][] coefficientMatrix = copySegments(this.coefficientMatrix, 0, 0);
+        refitAround(index, xValues, yValues, coefficientMatrix);
+        return new CubicSplineInterpolator(xValues, yValues, this.epsilon, coefficientMatrix);
+    }
+
+    // the new point becomes point index, index == getNumberOfPoints() appends it
+    public CubicSplineInterpolator withInsertedPoint(int index, double x, double y) throws IllegalArgumentException {
+        checkPointIndex(index, this.xValues.length);
+        double[] xValues = insert(this.xValues, index, x);
+        double[] yValues = insert(this.yValues, index, y);
+        double[][] coefficientMatrix = copySegments(this.coefficientMatrix, index, 1);
+        refitAround(index, xValues, yValues, coefficientMatrix);
+        return new CubicSplineInterpolator(xValues, yValues, this.epsilon, coefficientMatrix);
+    }
+
+    public CubicSplineInterpolator withRemovedPoint(int index) throws IllegalArgumentException {
+        checkPointIndex(index, this.xValues.length - 1);
+        if (this.xValues.length == 2) throw new IllegalArgumentException("A spline needs at least two points");
+        double[] xValues = remove(this.xValues, index);
+        double[] yValues = remove(this.yValues, index);
+        double[][] coefficientMatrix = copySegments(this.coefficientMatrix, index, -1);
+        refitAround(index, xValues, yValues, coefficientMatrix);
+        return new CubicSplineInterpolator(xValues, yValues, this.epsilon, coefficientMatrix);
+    }
+
+    private static void checkPointIndex(int index, int maximum) throws IllegalArgumentException {
+        if ((index < 0) || (index > maximum))
+            throw new IllegalArgumentException("Point " + index + " is out of range (0," + maximum + ")");
+    }
+
+    private static double[] insert(double[] values, int index, double value) {
+        double[] result = new double[values.length + 1];
+        System.arraycopy(values, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(values, index, result, index + 1, values.length - index);
+        return result;
+    }
+
+    private static double[] remove(double[] values, int index) {
+        double[] result = new double[values.length - 1];
+        System.arraycopy(values, 0, result, 0, index);
+        System.arraycopy(values, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    /*
+     * Copies the segments of a matrix after a point at index was inserted (shift 1), removed (shift -1) or changed
+     * (shift 0). Segments that end before the point keep their place, those that start after it move by shift; the
+     * ones in between are left for refitAround to fill in.
+     */
+    private static double[][] copySegments(double[][] matrix, int index, int shift) {
+        int segments = matrix[0].length;
+        double[][] result = new double[4][segments + shift];
+        for (int row = 0; row < 4; ++row) {
+            if (shift == 0) {
+                System.arraycopy(matrix[row], 0, result[row], 0, segments);
+                continue;
+            }
+            int before = Math.max(0, index - 1);
+            System.arraycopy(matrix[row], 0, result[row], 0, before);
+            int after = (shift > 0) ? index : index + 1;
+            if (after < segments) System.arraycopy(matrix[row], after, result[row], after + shift, segments - after);
         }
-        return firstDerivativeX0;
+        return result;
     }
 
-    public double calculateSecondDerivativeXiMinusOne(double[] X, double[] Y, double firstDerivativeX1, double firstDerivativeX0, int i) {
-        double secondDerivativeX0;
-        secondDerivativeX0 = (-2 * (firstDerivativeX1 + 2 * firstDerivativeX0) / (X[i] - X[i - 1]))
-                           + (6 * (Y[i] - Y[i - 1]))
-                           /  Math.pow(X[i] - X[i - 1], 2);
-        return secondDerivativeX0;
+    // refits the segments whose end slopes depend on point index
+    private static void refitAround(int index, double[] xValues, double[] yValues, double[][] coefficientMatrix) {
+        int count = xValues.length;
+        int first = Math.max(0, index - 2);
+        int last = Math.min(count - 2, index + 1);
+        double startSlope = MonotoneSplineEngine.slopeAt(xValues, yValues, count, first);
+        for (int segment = first; segment <= last; ++segment) {
+            double endSlope = MonotoneSplineEngine.slopeAt(xValues, yValues, count, segment + 1);
+            SplineEngine.globalSegment(xValues, yValues, segment, startSlope, endSlope, coefficientMatrix);
+            startSlope = endSlope;
+        }
     }
 
-    public double calculateSecondDerivativeXi (double[] X, double[] Y, double firstDerivativeX1, double firstDerivativeX0, int i) {
-        double secondDerivativeX1;
-        secondDerivativeX1 = (2 * (2 * firstDerivativeX1 + firstDerivativeX0) / (X[i] - X[i - 1]))
-                           - (6 * (Y[i] - Y[i - 1]))
-                           / Math.pow(X[i] - X[i - 1], 2);
-        return secondDerivativeX1;
+    // constrained spline through the points, in the global form a + b x + c x^2 + d x^3 per segment
+    private static double[][] calculateCubicSplines(double[] X, double[] Y, SplineWorkspace workspace) {
+        double[][] coefficientMatrix = new double[4][X.length - 1];
+        SplineEngine.monotone().fitGlobal(X, Y, X.length, coefficientMatrix, workspace);
+        return coefficientMatrix;
     }
 
     public double interpolateY(double x) throws IllegalArgumentException {
-        if (floatEqual(1, x)) x = 1; // check if there was a small error calculating x which put it out of range
-        if (floatEqual(0, x)) x = 0;
-        if (x > 1 || x < 0) throw new IllegalArgumentException("X out of range (0,1)");      // if the value is more than epsilon out of range then return garbage
-
-        int i;
-        for (i = 0; i < this.coefficientMatrix[A].length; ++i) {
-            if  ((floatEqualGreaterThan(x, this.xValues[i]))
-              && (floatEqualLessThan(x, this.xValues[i + 1])))
-                  break;
-        }
-        return    this.coefficientMatrix[A][i]
-                + this.coefficientMatrix[B][i] * x
-                + this.coefficientMatrix[C][i] * Math.pow(x, 2)
-                + this.coefficientMatrix[D][i] * Math.pow(x, 3);
+        x = clampToUnitRange(x, "X");
+        SolverMetrics.SPLINE_EVALUATIONS.increment();
+        return evaluate(this.coefficientMatrix, this.xLocator.locate(x), x);
     }
 
+    // same as interpolateY but starts the segment search where the cursor last stopped
+    public double interpolateY(double x, SegmentLocator.Cursor cursor) throws IllegalArgumentException {
+        x = clampToUnitRange(x, "X");
+        SolverMetrics.SPLINE_EVALUATIONS.increment();
+        return evaluate(this.coefficientMatrix, cursor.locate(x), x);
+    }
+
+    /*
+     * x where the fitted curve reaches y, found by solving the forward cubic of the segment for x, so
+     * interpolateY(interpolateX(y)) == y to rounding. The knot y values suggest the segment; on a segment that is
+     * monotone the root is unique and a safeguarded Newton iteration seeded from the segment's secant finds it in
+     * a few steps. A segment that turns is solved for all its roots and the smallest is used. If the suggested
+     * segment does not reach y (the knots are not sorted by y) the first segment that does is used.
+     */
     public double interpolateX(double y) throws IllegalArgumentException {
-        if (floatEqual(1, y)) y = 1; // check if there was a small error calculating x which put it out of range
-        if (floatEqual(0, y)) y = 0;
-        if ((y > 1) || (y < 0)) throw new IllegalArgumentException("Y out of range (0,1)");
-
-        int i;
-        for (i = 0; i < this.inverseCoefficientsMatrix[A].length; ++i) {
-            if  ((floatEqualGreaterThan(y, this.yValues[i]))
-              && (floatEqualLessThan(y, this.yValues[i + 1])))
-                break;
+        y = clampToUnitRange(y, "Y");
+        SolverMetrics.SPLINE_EVALUATIONS.increment();
+        return invert(this.yLocator.locate(y), y);
+    }
+
+    public double interpolateX(double y, SegmentLocator.Cursor cursor) throws IllegalArgumentException {
+        y = clampToUnitRange(y, "Y");
+        SolverMetrics.SPLINE_EVALUATIONS.increment();
+        return invert(cursor.locate(y), y);
+    }
+
+    // cursor for walking along x with interpolateY(x, cursor)
+    public SegmentLocator.Cursor xCursor() {
+        return this.xLocator.cursor();
+    }
+
+    // cursor for walking along y with interpolateX(y, cursor)
+    public SegmentLocator.Cursor yCursor() {
+        return this.yLocator.cursor();
+    }
+
+    /*
+     * Batch versions of interpolateY and interpolateX, out[k] receives the value for xs[k] (or ys[k]). Inputs that
+     * are sorted are found with a cursor so the segment search is close to free, and the cubic is evaluated in
+     * Horner form straight from the coefficient rows.
+     */
+    public void interpolateY(double[] xs, double[] out) throws IllegalArgumentException {
+        evaluateAll(this.coefficientMatrix, this.xLocator.cursor(), xs, out, "X");
+    }
+
+    public void interpolateX(double[] ys, double[] out) throws IllegalArgumentException {
+        if ((ys == null) || (out == null) || (out.length < ys.length))
+            throw new IllegalArgumentException("Output array must be at least as long as the input array");
+        SolverMetrics.SPLINE_EVALUATIONS.add(ys.length);
+        SegmentLocator.Cursor cursor = this.yLocator.cursor();
+        for (int k = 0; k < ys.length; ++k) {
+            double y = clampToUnitRange(ys[k], "Y");
+            out[k] = invert(cursor.locate(y), y);
+        }
+    }
+
+    private double invert(int segment, double y) throws IllegalArgumentException {
+        double x = solveSegment(segment, y);
+        for (int i = 0; Double.isNaN(x) && (i < this.inverseSecants.length); ++i) {
+            if (i != segment) x = solveSegment(i, y);
+        }
+        if (Double.isNaN(x)) throw new IllegalArgumentException("Y value of " + y + " is not reached by the curve");
+        return x;
+    }
+
+    // x on segment i where the curve equals y, NaN if the segment does not reach y
+    private double solveSegment(int i, double y) {
+        double a = this.coefficientMatrix[A][i] - y;
+        double b = this.coefficientMatrix[B][i];
+        double c = this.coefficientMatrix[C][i];
+        double d = this.coefficientMatrix[D][i];
+        double lo = Math.min(this.xValues[i], this.xValues[i + 1]);
+        double hi = Math.max(this.xValues[i], this.xValues[i + 1]);
+        if (Double.isNaN(this.inverseSecants[i])) {
+            double[] roots = new double[3];
+            int count = cubicRoots(a, b, c, d, lo, hi, roots, 0);
+            if (count == 0) return Double.NaN;
+            double smallest = roots[0];
+            for (int k = 1; k < count; ++k) smallest = Math.min(smallest, roots[k]);
+            return smallest;
+        }
+
+        double fLo = evaluateCubic(a, b, c, d, lo);
+        double fHi = evaluateCubic(a, b, c, d, hi);
+        if (Math.abs(fLo) <= ROOT_TOLERANCE) return lo;
+        if (Math.abs(fHi) <= ROOT_TOLERANCE) return hi;
+        if ((fLo < 0) == (fHi < 0)) return Double.NaN;
+        double seed = this.xValues[i] + (y - this.yValues[i]) * this.inverseSecants[i];
+        return refineRoot(a, b, c, d, lo, hi, fLo, seed);
+    }
+
+    /*
+     * Seed table for interpolateX: the inverse secant slope dx/dy of every segment whose cubic is monotone between
+     * its knots, and NaN for a segment whose cubic turns (its derivative changes sign inside the segment).
+     */
+    private static double[] inverseSecants(double[] xValues, double[] yValues, double[][] coefficientMatrix) {
+        double[] secants = new double[xValues.length - 1];
+        for (int i = 0; i < secants.length; ++i) {
+            double lo = Math.min(xValues[i], xValues[i + 1]);
+            double hi = Math.max(xValues[i], xValues[i + 1]);
+            double b = coefficientMatrix[1][i];
+            double c = coefficientMatrix[2][i];
+            double d = coefficientMatrix[3][i];
+            boolean turns = false;
+            double discriminant = 4 * c * c - 12 * d * b;   // derivative b + 2 c x + 3 d x^2
+            if ((d != 0) && (discriminant > 0)) {
+                double root = Math.sqrt(discriminant);
+                double first = (-2 * c - root) / (6 * d);
+                double second = (-2 * c + root) / (6 * d);
+                turns = ((first > lo) && (first < hi)) || ((second > lo) && (second < hi));
+            } else if ((d == 0) && (c != 0)) {
+                double vertex = -b / (2 * c);
+                turns = (vertex > lo) && (vertex < hi);
+            }
+            secants[i] = turns ? Double.NaN : (xValues[i + 1] - xValues[i]) / (yValues[i + 1] - yValues[i]);
         }
-        return    this.inverseCoefficientsMatrix[A][i]
-                + this.inverseCoefficientsMatrix[B][i] * y
-                + this.inverseCoefficientsMatrix[C][i] * Math.pow(y, 2)
-                + this.inverseCoefficientsMatrix[D][i] * Math.pow(y, 3);
+        return secants;
+    }
+
+    private void evaluateAll(double[][] coefficients, SegmentLocator.Cursor cursor, double[] values, double[] out,
+                             String name) throws IllegalArgumentException {
+        if ((values == null) || (out == null) || (out.length < values.length))
+            throw new IllegalArgumentException("Output array must be at least as long as the input array");
+        SolverMetrics.SPLINE_EVALUATIONS.add(values.length);
+        double[] a = coefficients[A];
+        double[] b = coefficients[B];
+        double[] c = coefficients[C];
+        double[] d = coefficients[D];
+        for (int k = 0; k < values.length; ++k) {
+            double value = clampToUnitRange(values[k], name);
+            int i = cursor.locate(value);
+            out[k] = ((d[i] * value + c[i]) * value + b[i]) * value + a[i];
+        }
+    }
+
+    private double evaluate(double[][] coefficients, int i, double value) {
+        return ((coefficients[D][i] * value + coefficients[C][i]) * value + coefficients[B][i]) * value
+               + coefficients[A][i];
+    }
+
+    static double clampToUnitRange(double value, String name) throws IllegalArgumentException {
+        if (floatEqual(1, value)) value = 1; // check if there was a small error calculating the value which put it out of range
+        if (floatEqual(0, value)) value = 0;
+        if ((value > 1) || (value < 0)) throw new IllegalArgumentException(name + " out of range (0,1)");
+        return value;
     }
 
     public static boolean floatEqualLessThan(double comparator, double source) {
@@ -193,124 +389,210 @@ public class CubicSplineInterpolator {
     }
 
     public void exportToCSV(double minX, double maxX, String fileName) throws IOException {
-        double x = minX;
-        double increment = (maxX - minX) / 333;
+        exportToCSV(minX, maxX, CurveSampler.DEFAULT_TOLERANCE, fileName);
+    }
 
-        File file = new File(fileName);
-        if (!file.exists()) {
-            file.createNewFile();
+    // writes y,x rows from minX to maxX inclusive, spaced so the curve is within tolerance of the lines between them
+    public void exportToCSV(double minX, double maxX, double tolerance, String fileName) throws IOException {
+        TrajectoryBuffer points = new CurveSampler(this::interpolateY, tolerance).sample(minX, maxX);
+        try (ResultWriter writer = new ResultWriter(fileName)) {
+            for (int i = 0; i < points.size(); ++i) {
+                writer.writeRow(points.getY(i), points.getX(i));
+            }
         }
-        FileWriter writer = new FileWriter(file);
-        BufferedWriter bw = new BufferedWriter(writer);
-
-        String dataPoint;
-        while (x < maxX) {
-            dataPoint = Double.toString(this.interpolateY(x));
-            bw.append(dataPoint).append(",").append(Double.toString(x)).append("\n");
-            x += increment;
-        }
-        bw.close();
         System.out.println("Data was written to the file " + fileName);
     }
 
     public double qLineIntersection(double[] coefficients, double x0) {
-        int i;
         int SLOPE = 0;
         int INTERCEPT = 1;
-
-        double increment = this.epsilon * coefficients[SLOPE] / 100; // to go in the direction of the slope.
-        for (i = 0; i < this.coefficientMatrix[A].length; ++i) {
-            if  ((floatEqualGreaterThan(x0, this.xValues[i]))
-              && (floatEqualLessThan(x0, this.xValues[i + 1])))
-                break;
-        }
-        double x = x0 + increment;
-        double y;
-        do {
-            x += increment;
-            if ((i == 11) || (i == -1)) return -9999;
-            if (floatEqualLessThan(x, this.xValues[i])) --i;
-            if (floatEqualGreaterThan(x, this.xValues[i + 1])) ++i;
-
-            y = this.interpolateY(x);
-            y -= coefficients[SLOPE] * x + coefficients[INTERCEPT];
-        } while (!floatEqual(0, y));
-        return x;
+        return firstIntersection(coefficients[SLOPE], coefficients[INTERCEPT], x0,
+                                 (coefficients[SLOPE] < 0) ? -1 : 1); // to go in the direction of the slope.
     }
 
     public double QLInt(LinearFunction linearFunction, double x0) {
-        int i;
-        double increment = this.epsilon * linearFunction.getSlope() / 100;
-        for (i = 0; i < this.coefficientMatrix[A].length; ++i) {
-            if  ((floatEqualGreaterThan(x0, this.xValues[i]))
-                    && (floatEqualLessThan(x0, this.xValues[i + 1])))
-                break;
-        }
-        double currentX = x0 + increment;
-        double y;
-        do {
-            currentX += increment;
-            if ((i == 11) || (i == -1)) return -9999;
-            if (floatEqualLessThan(currentX, this.xValues[i])) --i;
-            if (floatEqualGreaterThan(currentX, this.xValues[i + 1])) ++i;
-
-            y = this.interpolateY(currentX);
-            y -= linearFunction.interpolateY(currentX);
-        } while (!floatEqual(y, 0));
-        return currentX;
+        return firstIntersection(linearFunction.getSlope(), linearFunction.getIntercept(), x0,
+                                 (linearFunction.getSlope() < 0) ? -1 : 1);
     }
 
     public double ELInt(LinearFunction linearFunction, double x0) {
-        int i;
-        double increment = this.epsilon * linearFunction.getSlope() ;
-        for (i = 0; i < this.coefficientMatrix[A].length; ++i) {
-            if  ((floatEqualGreaterThan(x0, this.xValues[i]))
-                    && (floatEqualLessThan(x0, this.xValues[i + 1])))
-                break;
-        }
-        double currentX = x0 + increment;
-        double y;
-        do {
-            currentX -= increment;
-            if ((i == 11) || (i == -1)) return -9999;
-            if (floatEqualLessThan(currentX, this.xValues[i])) --i;
-            if (floatEqualGreaterThan(currentX, this.xValues[i + 1])) ++i;
-
-            double y1 = this.interpolateY(currentX);
-            double y2 = linearFunction.interpolateY(currentX);
-            y = y2 - y1;
-        } while (!floatEqual(y, 0));
-        return currentX;
+        return firstIntersection(linearFunction.getSlope(), linearFunction.getIntercept(), x0,
+                                 (linearFunction.getSlope() < 0) ? 1 : -1);
     }
 
     public double enrichingLineIntersection(double[] coefficients, double x0) {
-        int i;
         int SLOPE = 0;
         int INTERCEPT = 1;
+        return firstIntersection(coefficients[SLOPE], coefficients[INTERCEPT], x0,
+                                 (coefficients[SLOPE] < 0) ? 1 : -1); // against the direction of the slope.
+    }
 
-        double increment = this.epsilon * coefficients[SLOPE] / 100; // to go in the direction of the slope.
-        for (i = 0; i < this.coefficientMatrix[A].length; ++i) {
-            if  ((floatEqualGreaterThan(x0, this.xValues[i]))
-                    && (floatEqualLessThan(x0, this.xValues[i + 1])))
-                break;
+    // analytic first derivative dy/dx of the fitted curve
+    public double derivativeY(double x) throws IllegalArgumentException {
+        x = clampToUnitRange(x, "X");
+        int i = this.xLocator.locate(x);
+        return (3 * this.coefficientMatrix[D][i] * x + 2 * this.coefficientMatrix[C][i]) * x
+               + this.coefficientMatrix[B][i];
+    }
+
+    /*
+     * Finds the points in [lo, hi] where a line drawn from the pivot (xPivot, yPivot) touches the curve, i.e. where
+     * y'(x) * (xPivot - x) = yPivot - y(x). On each segment that condition is itself a cubic in x, so it is solved
+     * with the same per-segment root finder as the line intersections. Points are returned in ascending order.
+     */
+    public double[] tangentPoints(double xPivot, double yPivot, double lo, double hi) {
+        int segments = this.coefficientMatrix[A].length;
+        double[] roots = new double[7 * segments];
+        int count = 0;
+        for (int i = 0; i < segments; ++i) {
+            double segmentLo = Math.max(lo, Math.min(this.xValues[i], this.xValues[i + 1]));
+            double segmentHi = Math.min(hi, Math.max(this.xValues[i], this.xValues[i + 1]));
+            if (segmentLo >= segmentHi) continue;
+            double a = this.coefficientMatrix[A][i];
+            double b = this.coefficientMatrix[B][i];
+            double c = this.coefficientMatrix[C][i];
+            double d = this.coefficientMatrix[D][i];
+            count = cubicRoots(a + b * xPivot - yPivot, 2 * c * xPivot, 3 * d * xPivot - c, -2 * d,
+                               segmentLo, segmentHi, roots, count);
         }
-        double x = x0 + increment;
-        double y;
-        do {
-            x -= increment;
-            if ((i == 11) || (i == -1)) return -9999;
-            if (floatEqualLessThan(x, this.xValues[i])) --i;
-            if (floatEqualGreaterThan(x, this.xValues[i + 1])) ++i;
-
-            y = this.interpolateY(x);
-            y -= coefficients[SLOPE] * x + coefficients[INTERCEPT];
-        } while (!floatEqual(0, y));
-        return x;
+        Arrays.sort(roots, 0, count);
+
+        int unique = 0;
+        for (int i = 0; i < count; ++i) {
+            if ((unique == 0) || (roots[i] - roots[unique - 1] > ROOT_TOLERANCE)) roots[unique++] = roots[i];
+        }
+        return Arrays.copyOf(roots, unique);
     }
 
-}
+    // returns the closest intersection to x0 in the given direction, or -9999 if the line never meets the curve
+    public double firstIntersection(double slope, double intercept, double x0, int direction) {
+        double[] roots = lineIntersections(slope, intercept, x0, direction);
+        return (roots.length == 0) ? NO_INTERSECTION : roots[0];
+    }
+
+    /*
+     * Finds every point where the line y = slope * x + intercept crosses the spline. The line is subtracted from
+     * each segment's cubic and the difference is solved on that segment, so there is no marching and no
+     * dependence on epsilon. Roots are ordered by distance from x0 going in the given direction
+     * (positive = towards larger x, negative = towards smaller x); x0 itself is not reported.
+     */
+    public double[] lineIntersections(double slope, double intercept, double x0, int direction) {
+        int segments = this.coefficientMatrix[A].length;
+        double[] roots = new double[7 * segments];
+        int count = 0;
+        for (int i = 0; i < segments; ++i) {
+            double lo = Math.min(this.xValues[i], this.xValues[i + 1]);
+            double hi = Math.max(this.xValues[i], this.xValues[i + 1]);
+            if ((direction > 0) ? (hi <= x0) : (lo >= x0)) continue; // segment is behind the starting point
+            count = cubicRoots(this.coefficientMatrix[A][i] - intercept,
+                               this.coefficientMatrix[B][i] - slope,
+                               this.coefficientMatrix[C][i],
+                               this.coefficientMatrix[D][i],
+                               lo, hi, roots, count);
+        }
+
+        int kept = 0;
+        for (int i = 0; i < count; ++i) {
+            if ((direction > 0) ? (roots[i] > x0 + ROOT_TOLERANCE) : (roots[i] < x0 - ROOT_TOLERANCE)) {
+                roots[kept++] = roots[i];
+            }
+        }
+        Arrays.sort(roots, 0, kept);
+
+        int unique = 0;
+        for (int i = 0; i < kept; ++i) { // neighbouring segments both report a root sitting on their shared knot
+            if ((unique == 0) || (roots[i] - roots[unique - 1] > ROOT_TOLERANCE)) roots[unique++] = roots[i];
+        }
+        double[] result = new double[unique];
+        for (int i = 0; i < unique; ++i) {
+            result[i] = (direction > 0) ? roots[i] : roots[unique - 1 - i];
+        }
+        return result;
+    }
 
+    /*
+     * Appends the roots of c0 + c1 * x + c2 * x^2 + c3 * x^3 on [lo, hi] to roots, starting at index count, and
+     * returns the new count. The interval is split at the turning points of the cubic so that every piece is
+     * monotone, then each piece with a sign change is solved with a bracketed Newton iteration. Touching roots
+     * (turning points sitting on zero) are reported as well.
+     */
+    static int cubicRoots(double c0, double c1, double c2, double c3, double lo, double hi, double[] roots, int count) {
+        double turn1 = hi;
+        double turn2 = hi;
+        if (c3 != 0) {
+            double qa = 3 * c3;
+            double qb = 2 * c2;
+            double discriminant = qb * qb - 4 * qa * c1;
+            if (discriminant >= 0) {
+                double t = -0.5 * (qb + Math.copySign(Math.sqrt(discriminant), qb));
+                double r1 = t / qa;
+                double r2 = (t != 0) ? c1 / t : r1;
+                turn1 = Math.min(r1, r2);
+                turn2 = Math.max(r1, r2);
+            }
+        } else if (c2 != 0) {
+            turn1 = -c1 / (2 * c2);
+        }
+        if ((turn1 <= lo) || (turn1 >= hi)) turn1 = hi;
+        if ((turn2 <= lo) || (turn2 >= hi)) turn2 = hi;
+        if (turn2 < turn1) {
+            double temp = turn1;
+            turn1 = turn2;
+            turn2 = temp;
+        }
 
+        double left = lo;
+        double fLeft = evaluateCubic(c0, c1, c2, c3, lo);
+        for (int piece = 0; piece < 3; ++piece) {
+            double right = (piece == 0) ? turn1 : (piece == 1) ? turn2 : hi;
+            if (right <= left) continue;
+            double fRight = evaluateCubic(c0, c1, c2, c3, right);
+            if (Math.abs(fLeft) <= ROOT_TOLERANCE) {
+                roots[count++] = left;
+            } else if ((Math.abs(fRight) > ROOT_TOLERANCE) && ((fLeft < 0) != (fRight < 0))) {
+                roots[count++] = solveBracketed(c0, c1, c2, c3, left, right, fLeft);
+            }
+            left = right;
+            fLeft = fRight;
+        }
+        if (Math.abs(fLeft) <= ROOT_TOLERANCE) roots[count++] = left;
+        return count;
+    }
 
+    private static double solveBracketed(double c0, double c1, double c2, double c3,
+                                         double left, double right, double fLeft) {
+        SolverMetrics.INTERSECTION_SOLVES.increment();
+        return refineRoot(c0, c1, c2, c3, left, right, fLeft, 0.5 * (left + right));
+    }
 
+    /*
+     * Safeguarded Newton on a bracket with a sign change, starting from x. Falls back to bisection whenever Newton
+     * (or the starting point) leaves the bracket.
+     */
+    private static double refineRoot(double c0, double c1, double c2, double c3,
+                                     double left, double right, double fLeft, double x) {
+        if (!((x > left) && (x < right))) x = 0.5 * (left + right);
+        for (int iteration = 0; iteration < 100; ++iteration) {
+            SolverMetrics.INTERSECTION_ITERATIONS.increment();
+            double fx = evaluateCubic(c0, c1, c2, c3, x);
+            if (fx == 0) return x;
+            if ((fx < 0) == (fLeft < 0)) {
+                left = x;
+                fLeft = fx;
+            } else {
+                right = x;
+            }
+            double slope = (3 * c3 * x + 2 * c2) * x + c1;
+            double next = x - fx / slope;
+            if (!((next > left) && (next < right))) next = 0.5 * (left + right);
+            if (Math.abs(next - x) <= 1e-15 * (1 + Math.abs(x))) return next;
+            x = next;
+        }
+        return x;
+    }
 
+    private static double evaluateCubic(double c0, double c1, double c2, double c3, double x) {
+        return ((c3 * x + c2) * x + c1) * x + c0;
+    }
+
+}
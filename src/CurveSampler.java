@@ -0,0 +1,138 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.DoubleUnaryOperator;
+
+/*
+ * Samples a curve y(x) for plotting or export with as few points as it takes for straight lines between them to
+ * stay within a tolerance of the curve. Each interval is checked at its midpoint: the gap between the curve and the
+ * chord there is h^2 / 8 * y'' for a locally quadratic curve, so steep, strongly curved regions get short intervals
+ * and flat regions long ones. An interval that is out by more than the tolerance is halved, down to a depth limit.
+ *
+ * The range starts out as a uniform grid of 64 intervals, so no feature wider than that is stepped over, merged with
+ * any breakpoints the caller wants as exact sample points (spline knots, say, where the curvature jumps). Every x
+ * is computed from the ends of its interval rather than by adding up increments, so nothing drifts, and minX and
+ * maxX are both included exactly. The starting intervals are sampled in parallel on a fork/join pool and joined
+ * back in order; the curve is called from several threads at once, which the spline classes allow.
+ */
+public final class CurveSampler {
+
+    public static final double DEFAULT_TOLERANCE = 1e-5;
+
+    private static final int COARSE_INTERVALS = 64;    // the range is always split at least this finely
+    private static final int MAXIMUM_DEPTH = 24;
+    private static final int SEQUENTIAL_INTERVALS = 8; // intervals sampled by one task before it stops forking
+
+    private final DoubleUnaryOperator curve;
+    private final double tolerance;
+    private final ForkJoinPool pool;
+
+    public CurveSampler(DoubleUnaryOperator curve, double tolerance) throws IllegalArgumentException {
+        this(curve, tolerance, ForkJoinPool.commonPool());
+    }
+
+    public CurveSampler(DoubleUnaryOperator curve, double tolerance, ForkJoinPool pool)
+                        throws IllegalArgumentException {
+        if ((curve == null) || (pool == null) || !(tolerance > 0))
+            throw new IllegalArgumentException("Invalid parameters to constructor");
+        this.curve = curve;
+        this.tolerance = tolerance;
+        this.pool = pool;
+    }
+
+    public double getTolerance() {
+        return this.tolerance;
+    }
+
+    public TrajectoryBuffer sample(double minX, double maxX) throws IllegalArgumentException {
+        return sample(minX, maxX, null);
+    }
+
+    /*
+     * (x, y) points from minX to maxX in increasing x, both ends included. breakpoints may be null, unsorted or
+     * contain values outside the range; those inside it are sampled exactly.
+     */
+    public TrajectoryBuffer sample(double minX, double maxX, double[] breakpoints) throws IllegalArgumentException {
+        if (!(minX < maxX)) throw new IllegalArgumentException("minX must be less than maxX");
+        double[] grid = grid(minX, maxX, breakpoints);
+        double[] values = new double[grid.length];
+        for (int i = 0; i < grid.length; ++i) values[i] = this.curve.applyAsDouble(grid[i]);
+
+        TrajectoryBuffer points = this.pool.invoke(new Sampling(grid, values, 0, grid.length - 1));
+        points.add(maxX, values[grid.length - 1]);
+        return points;
+    }
+
+    // a uniform coarse grid from minX to maxX merged with the breakpoints strictly inside, sorted, no repeats
+    private static double[] grid(double minX, double maxX, double[] breakpoints) {
+        double[] grid = new double[COARSE_INTERVALS + 1 + ((breakpoints == null) ? 0 : breakpoints.length)];
+        int count = 0;
+        for (int i = 0; i < COARSE_INTERVALS; ++i) {
+            grid[count++] = minX + (maxX - minX) * i / COARSE_INTERVALS;
+        }
+        grid[count++] = maxX;
+        if (breakpoints != null) {
+            for (double x : breakpoints) {
+                if ((x > minX) && (x < maxX)) grid[count++] = x;
+            }
+        }
+        Arrays.sort(grid, 0, count);
+
+        int size = 1;
+        for (int i = 1; i < count; ++i) {
+            if (grid[i] != grid[size - 1]) grid[size++] = grid[i];
+        }
+        return Arrays.copyOf(grid, size);
+    }
+
+    /*
+     * Samples intervals first .. last - 1 of the grid, every point except the right end of the last one. Large
+     * ranges are split in two and sampled in parallel.
+     */
+    private final class Sampling extends RecursiveTask<TrajectoryBuffer> {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] grid;
+        private final double[] values;
+        private final int first;
+        private final int last;
+
+        private Sampling(double[] grid, double[] values, int first, int last) {
+            this.grid = grid;
+            this.values = values;
+            this.first = first;
+            this.last = last;
+        }
+
+        protected TrajectoryBuffer compute() {
+            if (this.last - this.first <= SEQUENTIAL_INTERVALS) {
+                TrajectoryBuffer points = new TrajectoryBuffer(4 * (this.last - this.first), false);
+                for (int i = this.first; i < this.last; ++i) {
+                    refine(this.grid[i], this.values[i], this.grid[i + 1], this.values[i + 1], 0, points);
+                }
+                return points;
+            }
+            int middle = (this.first + this.last) >>> 1;
+            Sampling right = new Sampling(this.grid, this.values, middle, this.last);
+            right.fork();
+            TrajectoryBuffer points = new Sampling(this.grid, this.values, this.first, middle).compute();
+            TrajectoryBuffer rightPoints = right.join();
+            for (int i = 0; i < rightPoints.size(); ++i) points.add(rightPoints.getX(i), rightPoints.getY(i));
+            return points;
+        }
+    }
+
+    // adds x0 and whatever points (x0, x1) needs, but not x1
+    private void refine(double x0, double y0, double x1, double y1, int depth, TrajectoryBuffer points) {
+        double middle = x0 + (x1 - x0) / 2;
+        if ((depth < MAXIMUM_DEPTH) && (middle > x0) && (middle < x1)) {
+            double yMiddle = this.curve.applyAsDouble(middle);
+            if (Math.abs(yMiddle - (y0 + y1) / 2) > this.tolerance) {
+                refine(x0, y0, middle, yMiddle, depth + 1, points);
+                refine(middle, yMiddle, x1, y1, depth + 1, points);
+                return;
+            }
+        }
+        points.add(x0, y0);
+    }
+}
@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/*
+ * Solves every combination of venture, feed temperature and reflux multiplier in parallel. Each venture gets one
+ * ColumnSession that is shared by all of its designs, the solves themselves are independent tasks on a fork/join
+ * pool.
+ */
+public class DesignSweep {
+
+    private final EquilibriumData data;
+    private final String speciesFileName;
+    private final double epsilon;
+    private final ForkJoinPool pool;
+
+    public DesignSweep(EquilibriumData data, String speciesFileName, double epsilon) {
+        this(data, speciesFileName, epsilon, ForkJoinPool.commonPool());
+    }
+
+    public DesignSweep(EquilibriumData data, String speciesFileName, double epsilon, ForkJoinPool pool)
+                       throws IllegalArgumentException {
+        if ((data == null) || (speciesFileName == null) || (pool == null))
+            throw new IllegalArgumentException("Invalid parameters to constructor");
+        this.data = data;
+        this.speciesFileName = speciesFileName;
+        this.epsilon = epsilon;
+        this.pool = pool;
+    }
+
+    /*
+     * Runs the sweep and hands each design to the sink as soon as it is solved, so results arrive in completion
+     * order rather than grid order. Calls to the sink are serialised, it does not have to be thread-safe.
+     */
+    public void run(int[] ventureNumbers, double[] feedTemperatures, double[] refluxMultipliers,
+                    Consumer<ColumnDesign> sink) throws IOException, InterruptedException {
+        run(ventureNumbers, feedTemperatures, refluxMultipliers, null, sink);
+    }
+
+    /*
+     * As above, but every design is first estimated with ShortcutDesign and only those the screen accepts are
+     * solved in full. The rest reach the sink as infeasible designs whose failure gives the estimate. A null
+     * screen accepts everything.
+     */
+    public void run(int[] ventureNumbers, double[] feedTemperatures, double[] refluxMultipliers,
+                    Predicate<ShortcutDesign> screen, Consumer<ColumnDesign> sink)
+                    throws IOException, InterruptedException {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        Object sinkLock = new Object();
+        for (int ventureNumber : ventureNumbers) {
+            ColumnSession session = new ColumnSession(this.speciesFileName, this.data, ventureNumber, this.epsilon);
+            for (double feedTemperature : feedTemperatures) {
+                for (double refluxMultiplier : refluxMultipliers) {
+                    tasks.add(() -> {
+                        ColumnDesign design = solve(session, feedTemperature, refluxMultiplier, screen);
+                        synchronized (sinkLock) {
+                            sink.accept(design);
+                        }
+                        return null;
+                    });
+                }
+            }
+        }
+
+        for (Future<Void> result : this.pool.invokeAll(tasks)) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    public List<ColumnDesign> run(int[] ventureNumbers, double[] feedTemperatures, double[] refluxMultipliers)
+                                  throws IOException, InterruptedException {
+        List<ColumnDesign> designs = new ArrayList<>();
+        run(ventureNumbers, feedTemperatures, refluxMultipliers, designs::add);
+        return designs;
+    }
+
+    private static ColumnDesign solve(ColumnSession session, double feedTemperature, double refluxMultiplier,
+                                      Predicate<ShortcutDesign> screen) {
+        try {
+            SolveOptions options = new SolveOptions().setRefluxMultiplier(refluxMultiplier);
+            if (screen != null) {
+                ShortcutDesign estimate = session.screen(feedTemperature, options);
+                if (!screen.test(estimate)) {
+                    return new ColumnDesign(session.getVentureNumber(), feedTemperature, refluxMultiplier,
+                                            "Screened out: " + estimate);
+                }
+            }
+            return session.solve(feedTemperature, options);
+        } catch (IllegalArgumentException e) {
+            return new ColumnDesign(session.getVentureNumber(), feedTemperature, refluxMultiplier, e.getMessage());
+        }
+    }
+
+    // count evenly spaced values from first to last, both ends included
+    public static double[] range(double first, double last, int count) throws IllegalArgumentException {
+        if (count < 1) throw new IllegalArgumentException("A range needs at least one value");
+        double[] values = new double[count];
+        for (int i = 0; i < count; ++i) {
+            values[i] = (count == 1) ? first : first + (last - first) * i / (count - 1);
+        }
+        return values;
+    }
+}
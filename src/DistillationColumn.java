@@ -18,24 +18,28 @@ public class DistillationColumn {
 
 
     public DistillationColumn(double feedTemperature, EquilibriumData data, int ventureNumber, double epsilon) throws IOException {
-        ChemicalSpecies[] chemicalSpecies;
-        chemicalSpecies = ChemicalSpecies.importDataFromCSV("RawMaterialPhysicalProperties", ventureNumber);
+        this(feedTemperature, new ColumnSession("RawMaterialPhysicalProperties", data, ventureNumber, epsilon));
+        System.out.println("Number of equilibrium stages: " + Math.ceil(this.numberOfTrays));
+    }
+
+    // reuses the species and fitted curve loaded by the session instead of reading and fitting them again
+    public DistillationColumn(double feedTemperature, ColumnSession session) {
+        ChemicalSpecies[] chemicalSpecies = session.getSpecies();
         if (chemicalSpecies[0].getNormalBoilingPoint() < chemicalSpecies[1].getNormalBoilingPoint()) {
-            this.mostVolatileComponent = chemicalSpecies[0].clone();
-            this.leastVolatileComponent = chemicalSpecies[1].clone();
+            this.mostVolatileComponent = chemicalSpecies[0];
+            this.leastVolatileComponent = chemicalSpecies[1];
         } else {
-            this.leastVolatileComponent = chemicalSpecies[0].clone();
-            this.mostVolatileComponent = chemicalSpecies[1].clone();
+            this.leastVolatileComponent = chemicalSpecies[0];
+            this.mostVolatileComponent = chemicalSpecies[1];
         }
-        this.interpolator = new CubicSplineInterpolator(data.getXData(ventureNumber), data.getYData(ventureNumber), epsilon);
+        this.interpolator = session.getInterpolator();
         this.feedFlowRate = mostVolatileComponent.getMaxFeedRate();
         this.xFeed = mostVolatileComponent.getxFeed();
         this.xDistillate = mostVolatileComponent.getDistillateFractionRequired();
         this.xBottoms = mostVolatileComponent.getBottomsFractionRequired();
         this.numberOfTrays = solveColumn(feedTemperature);
-        this.distillateFlowRate = (feedFlowRate * (xFeed - xBottoms)) / (xDistillate + xBottoms) ;
+        this.distillateFlowRate = (feedFlowRate * (xFeed - xBottoms)) / (xDistillate - xBottoms); // light component balance
         this.bottomsFlowRate = feedFlowRate - distillateFlowRate;
-        System.out.println("Number of equilibrium stages: " + Math.ceil(this.numberOfTrays));
     }
 
     public double calculateQ(double feedTemp) {
@@ -47,74 +51,43 @@ public class DistillationColumn {
                                     + this.leastVolatileComponent.getHeatCapacity()) / 2;
         double latentHeat = this.mostVolatileComponent.getLatentHeat();
         q = (latentHeat + (feedTemp - averageBoilingPoint) * averageHeatCapacity) / latentHeat;
-        System.out.println("The value of Q is : " + q);
         return q;
     }
 
     public int solveColumn(double feedTemp) {
-        double increment = 0.00001;
-
         // Calculate Q, Find the coefficients of Q-Line, and find intersection of Q-Line with Equilibrium Curve
         double Q = calculateQ(feedTemp);
 
-        double[] qLineCoefficients;
-        double intersectionPointX;
-
-        if (Q == 1) {
-            qLineCoefficients = calculateQLineCoefficients(0.9999999);
-            intersectionPointX = this.interpolator.interpolateY(this.xFeed);
-        } else if (Q == 0) {
-            qLineCoefficients = calculateQLineCoefficients(0.0);
-            intersectionPointX = this.interpolator.interpolateX(this.xFeed);
-        } else {
-            qLineCoefficients = calculateQLineCoefficients(Q);
-            intersectionPointX = interpolator.qLineIntersection(qLineCoefficients, this.xFeed);
-        }
-
-        // Find the slope of the Enriching line that is tangent to the equilibrium curve for
-        // non-deal mixtures, ideal mixtures will return right away
-        double[] enrichingLineCoefficients = calculateEnrichingLineCoefficients(intersectionPointX);
-        double   newIntersectionX = intersectionPointX;
+        double[] qLineCoefficients = calculateQLineCoefficients((Q == 1) ? 0.9999999 : Q);
 
-        while (!CubicSplineInterpolator.floatEqualLessThan(
-                this.interpolator.enrichingLineIntersection(enrichingLineCoefficients, this.xDistillate),
-                intersectionPointX)) {
-            newIntersectionX -= 0.01;
-            enrichingLineCoefficients = calculateEnrichingLineCoefficients(newIntersectionX);
-        }
+        // Find the enriching line that pinches the equilibrium curve, either at the Q-Line intersection or
+        // tangent to the curve for non-ideal mixtures
+        long refluxStart = SolverMetrics.MINIMUM_REFLUX_TIME.start();
+        MinimumReflux minimumReflux = new MinimumReflux(this.interpolator,
+                                                        new OperatingLine(qLineCoefficients[0], qLineCoefficients[1]),
+                                                        this.xFeed, this.xDistillate);
+        SolverMetrics.MINIMUM_REFLUX_TIME.stop(refluxStart);
+        double[] enrichingLineCoefficients = {minimumReflux.getEnrichingLine().getSlope(),
+                                              minimumReflux.getEnrichingLine().getIntercept()};
 
         // Calculate ideal reflux ratio from the enriching line intercept, use heuristic to find real reflux ratio
         double idealRefluxRatio = (xDistillate / enrichingLineCoefficients[1]) - 1;
-        System.out.println("Ideal Reflux Ratio = " + idealRefluxRatio);
 
         double realRefluxRatio = 1.5 * idealRefluxRatio;
-        System.out.println("Real Reflux Ratio = " + realRefluxRatio);
 
         // Calculate new enriching line based on real reflux ratio
         enrichingLineCoefficients[1] = xDistillate / (realRefluxRatio + 1);
         enrichingLineCoefficients[0] = (xDistillate - enrichingLineCoefficients[1]) / (xDistillate);
 
-        double sum;
-        double qLineEnrichingLineIntersectionPoint = xFeed + increment * qLineCoefficients[0] / 100;
-        double yQLine;
-        double yEnrichingLine;
-        do {
-            qLineEnrichingLineIntersectionPoint += increment * qLineCoefficients[0] / 100;
-            yEnrichingLine = enrichingLineCoefficients[0] * qLineEnrichingLineIntersectionPoint + enrichingLineCoefficients[1];
-            yQLine =         qLineCoefficients[0] * qLineEnrichingLineIntersectionPoint         + qLineCoefficients[1];
-            sum = yEnrichingLine - yQLine;
-        } while (!CubicSplineInterpolator.floatEqual(sum, 0));
-        System.out.println("YQLine = " + yQLine + " YEnrichingLine = " + yEnrichingLine);
-        System.out.println("The enriching line intersects the q line at X = " + qLineEnrichingLineIntersectionPoint);
+        // Intersection of the Q-Line and the enriching line, where the two line equations are equal
+        if (qLineCoefficients[0] == enrichingLineCoefficients[0])
+            throw new IllegalArgumentException("The q-line is parallel to the enriching line");
+        double qLineEnrichingLineIntersectionPoint = (enrichingLineCoefficients[1] - qLineCoefficients[1])
+                                                     / (qLineCoefficients[0] - enrichingLineCoefficients[0]);
 
         // Calculate the rectifying line based on the intersection point between the Q-Line and Enriching Line
         double[] rectifyingLineCoefficients = calculateRectifyingLineCoefficients(enrichingLineCoefficients, qLineEnrichingLineIntersectionPoint);
 
-        // Output proposed solution to the console
-        System.out.println("The enriching line is : Y = " + enrichingLineCoefficients[0] + " * X + " + enrichingLineCoefficients[1]);
-        System.out.println("The Q line is : Y = " + qLineCoefficients[0] + " * X + " + qLineCoefficients[1]);
-        System.out.println("The rectifying line is : Y = " + rectifyingLineCoefficients[0] + " * X + " + rectifyingLineCoefficients[1]);
-
         return calculateNumTrays(enrichingLineCoefficients, rectifyingLineCoefficients, qLineEnrichingLineIntersectionPoint);
     }
 
@@ -123,13 +96,13 @@ public class DistillationColumn {
         double x = xDistillate;
         double y = xDistillate;
         int feedTray = 0;
-        System.out.println("Data Point (x = " + x + " y = " + y + ")");
+        SegmentLocator.Cursor cursor = interpolator.yCursor();
+        long start = SolverMetrics.TRAY_STEPPING_TIME.start();
         do {
             ++trayNumber;
 
             // increment tray and move across towards equilibrium curve
-            x = interpolator.interpolateX(y);
-            System.out.println("Data Point (x = " + x + " y = " + y + ")");
+            x = interpolator.interpolateX(y, cursor);
 
             // Calculates the new Y value on either the enriching or rectifying line depending on which side of feed tray
             if (x > intersectionX) {
@@ -138,8 +111,9 @@ public class DistillationColumn {
             } else {
                 y = rectifyingLineCoefficient[0] * x + rectifyingLineCoefficient[1];
             }
-            System.out.println("Data Point (x = " + x + " y = " + y + ")");
         } while (x > xBottoms);
+        SolverMetrics.TRAY_STEPPING_TIME.stop(start);
+        SolverMetrics.TRAYS_PER_COLUMN.record(trayNumber);
         return trayNumber;
     }
 
@@ -1,79 +1,337 @@
-import java.io.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 
+/*
+ * Equilibrium curves for any number of ventures, each with any number of points. The file holds two comma separated
+ * lines per venture, x values then y values. The constructor only scans the file once to find the lines and count
+ * the values on them; a venture's numbers are parsed the first time that venture is asked for. All values live in
+ * one flat array: venture v (0 based) occupies values[offsets[v] .. offsets[v + 1]), x values first then y values.
+ * Files larger than MAP_THRESHOLD bytes are memory mapped rather than read onto the heap.
+ *
+ * Because parsing is lazy, a value in the file that is not a number is only reported when its venture is first
+ * asked for, as a NumberFormatException naming the line.
+ */
 public class EquilibriumData {
 
-    private double[][][] data; // index 1 is Venture, index 2 is X(0) or Y(1) data, index 3 is values
+    private static final long MAP_THRESHOLD = 1 << 20;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /*
+     * Everything a reader needs, swapped as a whole by setData() so a reader that takes the reference once never
+     * mixes the offsets of one data set with the values of another. Only the contents of values change after
+     * construction, one venture at a time under the EquilibriumData's lock, and loaded says which are done.
+     */
+    private static final class State {
+        final double[] values;
+        final int[] offsets;                  // ventures + 1 entries
+        final ByteBuffer source;              // file contents, null once every venture is parsed
+        final int[] lineStarts;               // start of the x line and the y line of each venture in source
+        final AtomicIntegerArray loaded;      // 1 once a venture's values have been parsed
+        final AtomicInteger parsedVentures;
+
+        State(double[] values, int[] offsets, ByteBuffer source, int[] lineStarts, AtomicIntegerArray loaded,
+              AtomicInteger parsedVentures) {
+            this.values = values;
+            this.offsets = offsets;
+            this.source = source;
+            this.lineStarts = lineStarts;
+            this.loaded = loaded;
+            this.parsedVentures = parsedVentures;
+        }
+
+        // a state whose values are all present, with nothing left to parse
+        State(double[] values, int[] offsets) {
+            this(values, offsets, null, null, fullyLoaded(offsets.length - 1), new AtomicInteger(offsets.length - 1));
+        }
+
+        int ventures() {
+            return this.offsets.length - 1;
+        }
+    }
+
+    private volatile State state;
     private final int X = 0;
     private final int Y = 1;
 
-    public EquilibriumData(String fileName) {
-       this.data = new double[3][2][12]; // because we know the size of the data list otherwise would need to use a list
-       try {
-           BufferedReader reader = new BufferedReader(new FileReader(fileName));
-           String[] elements;
-           String line;
-           for (int i = 0; i < 3; ++i) {
-               for (int j = 0; j < 2; ++j) {
-                   line = reader.readLine();
-                   elements = line.split(",");
-                   for (int k = 0; k < 12; ++k) {
-                       data[i][j][k] = Double.parseDouble(elements[k]);
-                       }
-                   }
-               }
-        } catch (IOException e) {
-            e.printStackTrace();
-       }
+    public EquilibriumData(String fileName) throws IOException {
+        ByteBuffer source;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException(fileName + " is too large to index");
+            if (size >= MAP_THRESHOLD) {
+                source = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                source = ByteBuffer.allocate((int) size);
+                while (source.hasRemaining()) {
+                    if (channel.read(source) < 0) break;
+                }
+                source.flip();
+            }
+        }
+        this.state = index(fileName, source);
     }
 
     public EquilibriumData(EquilibriumData source) {
-        int size1 = source.data.length;
-        int size2 = source.data[0].length;
-        int size3 = source.data[0][0].length;
-        this.data = new double[size1][size2][size3];
-        for (int i = 0; i < size1; ++i) {
-            for (int j = 0; j < size2; ++j) {
-                for (int k = 0; k < size3; ++k) {
-                    this.data[i][j][k] = source.data[i][j][k];
-                }
+        State loaded = source.loadAll();
+        this.state = new State(loaded.values.clone(), loaded.offsets.clone());
+    }
+
+    // finds every non-blank line and sizes the venture blocks from the number of commas on each line
+    private static State index(String fileName, ByteBuffer source) throws IOException {
+        int limit = source.limit();
+        int[] starts = new int[16];
+        int[] counts = new int[16];
+        int lines = 0;
+        int position = 0;
+        while (position < limit) {
+            int start = position;
+            int commas = 0;
+            boolean blank = true;
+            byte current;
+            while ((position < limit) && ((current = source.get(position)) != '\n')) {
+                if (current == ',') commas++;
+                if ((current != ' ') && (current != '\r') && (current != '\t')) blank = false;
+                position++;
+            }
+            position++; // skip the newline
+            if (blank) continue;
+            if (lines == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * lines);
+                counts = Arrays.copyOf(counts, 2 * lines);
+            }
+            starts[lines] = start;
+            counts[lines] = commas + 1;
+            lines++;
+        }
+        if (lines % 2 != 0) throw new IOException(fileName + " has an x line without a matching y line");
+
+        int ventures = lines / 2;
+        int[] offsets = new int[ventures + 1];
+        for (int v = 0; v < ventures; ++v) {
+            if (counts[2 * v] != counts[2 * v + 1])
+                throw new IOException(fileName + ": venture " + (v + 1) + " has " + counts[2 * v] + " x values and "
+                                      + counts[2 * v + 1] + " y values");
+            offsets[v + 1] = offsets[v] + 2 * counts[2 * v];
+        }
+        return new State(new double[offsets[ventures]], offsets, source, Arrays.copyOf(starts, lines),
+                         new AtomicIntegerArray(ventures), new AtomicInteger());
+    }
+
+    private static AtomicIntegerArray fullyLoaded(int ventures) {
+        AtomicIntegerArray loaded = new AtomicIntegerArray(ventures);
+        for (int v = 0; v < ventures; ++v) loaded.set(v, 1);
+        return loaded;
+    }
+
+    /*
+     * Parses a venture of state on first use. A reader that sees loaded set also sees the values written before it,
+     * since setting an element of an AtomicIntegerArray is a volatile write. Once the last venture is in, the state
+     * is replaced by one without the file contents, unless setData() has already replaced it.
+     */
+    private void load(State state, int index) throws NumberFormatException {
+        if (state.loaded.get(index) == 1) return;
+        synchronized (this) {
+            if (state.loaded.get(index) == 1) return;
+            int count = (state.offsets[index + 1] - state.offsets[index]) / 2;
+            parseLine(state, state.lineStarts[2 * index], state.offsets[index], count);
+            parseLine(state, state.lineStarts[2 * index + 1], state.offsets[index] + count, count);
+            state.loaded.set(index, 1);
+            if ((state.parsedVentures.incrementAndGet() == state.ventures()) && (this.state == state))
+                this.state = new State(state.values, state.offsets, null, null, state.loaded, state.parsedVentures);
+        }
+    }
+
+    // parses every venture and returns the state they were parsed in
+    private State loadAll() {
+        State state = this.state;
+        for (int v = 0; v < state.ventures(); ++v) load(state, v);
+        return state;
+    }
+
+    private static void parseLine(State state, int position, int destination, int count)
+                                  throws NumberFormatException {
+        ByteBuffer source = state.source;
+        for (int k = 0; k < count; ++k) {
+            int end = position;
+            byte current;
+            while ((end < source.limit()) && ((current = source.get(end)) != ',') && (current != '\n')) end++;
+            try {
+                state.values[destination + k] = parseDouble(source, position, end);
+            } catch (NumberFormatException e) {
+                throw new NumberFormatException("Equilibrium data line " + lineNumber(source, position) + ": value "
+                                                + (k + 1) + " is not a number, " + e.getMessage());
             }
+            position = end + 1;
         }
     }
-    public double[][][] getData() {
-        int size1 = this.data.length;
-        int size2 = this.data[0].length;
-        int size3 = this.data[0][0].length;
-        double[][][] temp = new double[size1][size2][size3];
-        for (int i = 0; i < size1; ++i) {
-            for (int j = 0; j < size2; ++j) {
-                for (int k = 0; k < size3; ++k) {
-                    temp[i][j][k] = this.data[i][j][k];
+
+    // 1 based line of the file that position is on
+    private static int lineNumber(ByteBuffer source, int position) {
+        int line = 1;
+        for (int i = 0; i < position; ++i) {
+            if (source.get(i) == '\n') line++;
+        }
+        return line;
+    }
+
+    /*
+     * Decimal numbers with at most 15 significant digits and a small exponent are converted exactly as
+     * mantissa / 10^k, which gives the correctly rounded double because both operands are exact. Anything else
+     * (long mantissas, large exponents, NaN, Infinity) goes through Double.parseDouble.
+     */
+    private static double parseDouble(ByteBuffer source, int start, int end) {
+        while ((start < end) && (source.get(start) == ' ')) start++;
+        while ((end > start) && ((source.get(end - 1) == ' ') || (source.get(end - 1) == '\r'))) end--;
+
+        int position = start;
+        boolean negative = false;
+        if ((position < end) && ((source.get(position) == '-') || (source.get(position) == '+'))) {
+            negative = source.get(position) == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenPoint = false;
+        boolean seenDigit = false;
+        for (; position < end; ++position) {
+            byte current = source.get(position);
+            if ((current >= '0') && (current <= '9')) {
+                seenDigit = true;
+                if ((mantissa == 0) && (current == '0')) {  // leading zeros are not significant
+                    if (seenPoint) scale++;
+                    continue;
                 }
+                if (++digits > 15) return slowParse(source, start, end);
+                mantissa = 10 * mantissa + (current - '0');
+                if (seenPoint) scale++;
+            } else if ((current == '.') && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        int exponent = 0;
+        if (position < end) {
+            byte current = source.get(position);
+            if (((current != 'e') && (current != 'E')) || (position + 1 == end)) return slowParse(source, start, end);
+            position++;
+            boolean negativeExponent = false;
+            if ((source.get(position) == '-') || (source.get(position) == '+')) {
+                negativeExponent = source.get(position) == '-';
+                position++;
+            }
+            for (; position < end; ++position) {
+                current = source.get(position);
+                if ((current < '0') || (current > '9') || (exponent > 1000)) return slowParse(source, start, end);
+                exponent = 10 * exponent + (current - '0');
             }
+            if (negativeExponent) exponent = -exponent;
+        }
+        if (!seenDigit) return slowParse(source, start, end);
+
+        int power = exponent - scale;
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if ((power >= 0) && (power < POWERS_OF_TEN.length)) {
+            value = mantissa * POWERS_OF_TEN[power];
+            if (value >= 0x1p53) return slowParse(source, start, end); // product may have been rounded
+        } else if ((power < 0) && (-power < POWERS_OF_TEN.length)) {
+            value = mantissa / POWERS_OF_TEN[-power];
+        } else {
+            return slowParse(source, start, end);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double slowParse(ByteBuffer source, int start, int end) {
+        byte[] text = new byte[end - start];
+        for (int i = 0; i < text.length; ++i) text[i] = source.get(start + i);
+        return Double.parseDouble(new String(text, java.nio.charset.StandardCharsets.US_ASCII));
+    }
+
+    public double[][][] getData() {
+        State state = loadAll();
+        int ventures = state.ventures();
+        double[][][] temp = new double[ventures][2][];
+        for (int v = 0; v < ventures; ++v) {
+            temp[v][X] = xData(state, v);
+            temp[v][Y] = yData(state, v);
         }
         return temp;
     }
+
     public boolean setData(double[][][] source) {
         if (source == null) return false;
-        int size1 = source.length;
-        int size2 = source[0].length;
-        int size3 = source[0][0].length;
-        this.data = new double[size1][size2][size3];
-        for (int i = 0; i < size1; ++i) {
-            for (int j = 0; j < size2; ++j) {
-                for (int k = 0; k < size3; ++k) {
-                    this.data[i][j][k] = source[i][j][k];
-                }
-            }
+        int[] offsets = new int[source.length + 1];
+        for (int v = 0; v < source.length; ++v) {
+            if ((source[v] == null) || (source[v].length != 2) || (source[v][X] == null) || (source[v][Y] == null)
+            ||  (source[v][X].length != source[v][Y].length)) return false;
+            offsets[v + 1] = offsets[v] + 2 * source[v][X].length;
+        }
+        double[] values = new double[offsets[source.length]];
+        for (int v = 0; v < source.length; ++v) {
+            int count = source[v][X].length;
+            System.arraycopy(source[v][X], 0, values, offsets[v], count);
+            System.arraycopy(source[v][Y], 0, values, offsets[v] + count, count);
+        }
+        synchronized (this) {
+            this.state = new State(values, offsets);
         }
         return true;
     }
-    public double[] getXData(int venture) {
-        return this.data[venture - 1][X];
+
+    public int getNumberOfVentures() {
+        return this.state.ventures();
     }
-    public double[] getYData(int venture) {
-        return this.data[venture - 1][Y];
+
+    public int getNumberOfPoints(int venture) {
+        State state = this.state;
+        int index = ventureIndex(state, venture);
+        return (state.offsets[index + 1] - state.offsets[index]) / 2;
+    }
+
+    // throws NumberFormatException if the venture's x or y line in the file holds something that is not a number
+    public double[] getXData(int venture) throws NumberFormatException {
+        State state = this.state;
+        int index = ventureIndex(state, venture);
+        load(state, index);
+        return xData(state, index);
+    }
+
+    // throws NumberFormatException if the venture's x or y line in the file holds something that is not a number
+    public double[] getYData(int venture) throws NumberFormatException {
+        State state = this.state;
+        int index = ventureIndex(state, venture);
+        load(state, index);
+        return yData(state, index);
+    }
+
+    private static double[] xData(State state, int index) {
+        int count = (state.offsets[index + 1] - state.offsets[index]) / 2;
+        return Arrays.copyOfRange(state.values, state.offsets[index], state.offsets[index] + count);
+    }
+
+    private static double[] yData(State state, int index) {
+        int count = (state.offsets[index + 1] - state.offsets[index]) / 2;
+        return Arrays.copyOfRange(state.values, state.offsets[index] + count, state.offsets[index + 1]);
+    }
+
+    private static int ventureIndex(State state, int venture) throws IllegalArgumentException {
+        if ((venture < 1) || (venture > state.ventures()))
+            throw new IllegalArgumentException("Venture " + venture + " is not in the data set");
+        return venture - 1;
     }
 
 
@@ -84,18 +342,9 @@ public class EquilibriumData {
     public boolean equals(Object source) {
         if ((source == null) || (this.getClass() != source.getClass())) return false;
         if (source == this) return true;
-        EquilibriumData that = (EquilibriumData) source;
-        if ((this.data.length != that.data.length)
-         || (this.data[0].length != that.data[0].length)
-         || (this.data[0][0].length != that.data[0][0].length)) return false;
-        for (int i = 0; i < this.data.length; ++i) {
-            for (int j = 0; j < this.data[0].length; ++j) {
-                for (int k = 0; k < this.data[0][0].length; ++k) {
-                    if (this.data[i][j][k] != that.data[i][j][k]) return false;
-                }
-            }
-        }
-        return true;
+        State these = this.loadAll();
+        State those = ((EquilibriumData) source).loadAll();
+        return Arrays.equals(these.offsets, those.offsets) && Arrays.equals(these.values, those.values);
     }
 
 }
@@ -0,0 +1,43 @@
+/*
+ * Vapour-liquid equilibrium curve of a binary system as the McCabe-Thiele construction uses it: y is the vapour and
+ * x the liquid mole fraction of the more volatile component, both in [0, 1]. CubicSplineInterpolator fits any
+ * measured curve; ConstantVolatilityModel is the closed form y = alpha x / (1 + (alpha - 1) x), exact and far
+ * cheaper for systems it describes. select() chooses between them from the data. Models are immutable and can be
+ * shared between threads.
+ */
+public interface EquilibriumModel {
+
+    double NO_INTERSECTION = -9999;
+
+    double interpolateY(double x) throws IllegalArgumentException;
+
+    double interpolateX(double y) throws IllegalArgumentException;
+
+    /*
+     * Cursor for walking along y with interpolateX(y, cursor), for models that search for a segment. Models that
+     * need no search return null and ignore the cursor.
+     */
+    default SegmentLocator.Cursor yCursor() {
+        return null;
+    }
+
+    default double interpolateX(double y, SegmentLocator.Cursor cursor) throws IllegalArgumentException {
+        return interpolateX(y);
+    }
+
+    // the closest point to x0 in the given direction where the line meets the curve, or NO_INTERSECTION
+    double firstIntersection(double slope, double intercept, double x0, int direction);
+
+    // points in [lo, hi] where a line drawn from (xPivot, yPivot) touches the curve, in ascending order
+    double[] tangentPoints(double xPivot, double yPivot, double lo, double hi);
+
+    /*
+     * The constant relative volatility fitted to the spline's data when no point is further than tolerance (in y)
+     * from it, otherwise the spline itself.
+     */
+    static EquilibriumModel select(CubicSplineInterpolator spline, double tolerance) {
+        ConstantVolatilityModel model = ConstantVolatilityModel.fit(spline.xValues(), spline.yValues());
+        return ((model != null) && (model.getRelativeVolatility() > 1) && (model.getMaximumResidual() <= tolerance))
+               ? model : spline;
+    }
+}
@@ -0,0 +1,176 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Bounded in-process cache of fitted interpolators, keyed by the content of the data set, the epsilon and the kind
+ * of spline. Columns solved in the same process for the same venture then share one immutable interpolator instead
+ * of each fitting its own.
+ *
+ * Entries are evicted least recently used first once there are more than maximumSize of them, and are refitted
+ * when they are older than maximumAge. Fitting happens outside the cache lock; if several threads ask for the same
+ * missing key at once, one of them fits it and the others wait for that result.
+ */
+public class InterpolatorCache {
+
+    public enum SplineKind {
+        CONSTRAINED     // CubicSplineInterpolator fitted with its derivative based constrained spline
+    }
+
+    private static final InterpolatorCache DEFAULT = new InterpolatorCache(64, 10, TimeUnit.MINUTES);
+
+    private final int maximumSize;
+    private final long maximumAgeNanos;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // access order
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public InterpolatorCache(int maximumSize, long maximumAge, TimeUnit unit) throws IllegalArgumentException {
+        if ((maximumSize < 1) || (maximumAge <= 0))
+            throw new IllegalArgumentException("Cache size and age must be positive");
+        this.maximumSize = maximumSize;
+        this.maximumAgeNanos = unit.toNanos(maximumAge);
+    }
+
+    // process-wide cache used by the column classes
+    public static InterpolatorCache getDefault() {
+        return DEFAULT;
+    }
+
+    public CubicSplineInterpolator getInterpolator(double[] xValues, double[] yValues, double epsilon)
+                                                   throws IllegalArgumentException {
+        Key key = new Key(SplineCache.contentHash(xValues, yValues), epsilon, SplineKind.CONSTRAINED);
+        double[] x = xValues.clone();
+        double[] y = yValues.clone();
+        return get(key, () -> new CubicSplineInterpolator(x, y, epsilon));
+    }
+
+    private CubicSplineInterpolator get(Key key, Callable<CubicSplineInterpolator> loader) {
+        Entry entry;
+        boolean owner = false;
+        synchronized (this.entries) {
+            entry = this.entries.get(key);
+            if ((entry != null) && (System.nanoTime() - entry.created > this.maximumAgeNanos)) {
+                this.entries.remove(key);
+                this.evictions.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(new FutureTask<>(loader));
+                this.entries.put(key, entry);
+                owner = true;
+                evictOverflow();
+            }
+        }
+
+        if (owner) {
+            this.misses.increment();
+            entry.value.run();
+        } else {
+            this.hits.increment();
+        }
+
+        try {
+            return entry.value.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an interpolator to be fitted", e);
+        } catch (ExecutionException e) {
+            synchronized (this.entries) { // do not cache failures
+                this.entries.remove(key, entry);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<Key, Entry>> oldest = this.entries.entrySet().iterator();
+        while ((this.entries.size() > this.maximumSize) && oldest.hasNext()) {
+            oldest.next();
+            oldest.remove();
+            this.evictions.increment();
+        }
+    }
+
+    public void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return this.evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hits = this.hits.sum();
+        long total = hits + this.misses.sum();
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    public String toString() {
+        return "InterpolatorCache size = " + size() + " hits = " + getHitCount() + " misses = " + getMissCount()
+               + " evictions = " + getEvictionCount();
+    }
+
+    private static final class Entry {
+        private final FutureTask<CubicSplineInterpolator> value;
+        private final long created = System.nanoTime();
+
+        private Entry(FutureTask<CubicSplineInterpolator> value) {
+            this.value = value;
+        }
+    }
+
+    private static final class Key {
+        private final byte[] dataHash;
+        private final long epsilonBits;
+        private final SplineKind kind;
+        private final int hashCode;
+
+        private Key(byte[] dataHash, double epsilon, SplineKind kind) {
+            this.dataHash = dataHash;
+            this.epsilonBits = Double.doubleToLongBits(epsilon);
+            this.kind = kind;
+            this.hashCode = 31 * (31 * Arrays.hashCode(dataHash) + Long.hashCode(this.epsilonBits)) + kind.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return (this.epsilonBits == that.epsilonBits) && (this.kind == that.kind)
+                && Arrays.equals(this.dataHash, that.dataHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+}
@@ -1,10 +1,15 @@
+/*
+ * Straight line y = slope * x + intercept. Lines are immutable values: the coefficients are final and set once by
+ * the constructor, so one line can be shared by any number of solver threads without copies or locks.
+ */
 public abstract class LinearFunction {
 
-    protected double slope;
-    protected double intercept;
+    protected final double slope;
+    protected final double intercept;
 
-    public LinearFunction() {
-        ;
+    protected LinearFunction(double slope, double intercept) {
+        this.slope = slope;
+        this.intercept = intercept;
     }
 
     public abstract LinearFunction clone();
@@ -13,18 +18,29 @@ public abstract class LinearFunction {
         return this.slope * x + this.intercept;
     }
 
+    // x where the line reaches y, infinite or NaN for a horizontal line
+    public double interpolateX(double y) {
+        return (y - this.intercept) / this.slope;
+    }
+
+    // infinite or NaN if the lines are parallel, see isParallelTo
     public double calculateIntersectionPointX(LinearFunction that) {
         return (that.intercept - this.intercept) / (this.slope - that.slope);
     }
 
-    public void reCalculateCoefficients(double x1, double x0, double y1, double y0) {
-        this.slope = (y1 - y0) / (x1 - x0);
-        this.intercept = y1 - this.slope * (x1 - x0);
+    public double calculateIntersectionPointY(LinearFunction that) {
+        return interpolateY(calculateIntersectionPointX(that));
     }
 
-    public void setCoefficients(double slope, double intercept) {
-        this.slope = slope;
-        this.intercept = intercept;
+    // {x, y} where the lines cross, or null if they are parallel
+    public double[] intersection(LinearFunction that) {
+        if (isParallelTo(that)) return null;
+        double x = calculateIntersectionPointX(that);
+        return new double[]{x, interpolateY(x)};
+    }
+
+    public boolean isParallelTo(LinearFunction that) {
+        return this.slope == that.slope;
     }
 
     public double getSlope() {
@@ -42,6 +58,12 @@ public abstract class LinearFunction {
         return ((this.slope == that.slope) && (this.intercept == that.intercept));
     }
 
+    // adding 0.0 turns -0.0 into 0.0, which equals() treats as the same number
+    public int hashCode() {
+        return 31 * (31 * getClass().hashCode() + Double.hashCode(this.slope + 0.0))
+               + Double.hashCode(this.intercept + 0.0);
+    }
+
     public String toString() {
         return "Y = " + this.slope + " * X + " + this.intercept;
     }
@@ -1,13 +1,43 @@
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Main {
 
-    public static void main(String[] args) throws IOException {
+    private static final double FEED_TEMPERATURE = 337;
+
+    /*
+     * With no arguments solves venture 1 as always. "--batch [threads]" solves every venture in the data files at
+     * once on at most threads threads (default one per processor), writes each venture's staircase to
+     * DistillationColumnData_venture<n>.csv and prints a summary table, which is also written to BatchSummary.csv.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         String equilibriumDataFileName = "EquilibriumDataFile";
         String dataExportCSVFileName = "EquilibriumCurve.csv";
         String rawMaterialsDataFile = "RawMaterialPhysicalProperties";
         EquilibriumData data = new EquilibriumData(equilibriumDataFileName);
+
+        if ((args.length > 0) && args[0].equals("--batch")) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            try {
+                if (args.length > 1) threads = Integer.parseInt(args[1].trim());
+            } catch (NumberFormatException e) {
+                threads = 0;
+            }
+            if (threads < 1) {
+                System.err.println("Usage: java Main [--batch [threads]], threads must be a whole number of at least 1,"
+                                   + " got " + args[1]);
+                return;
+            }
+            runBatch(data, rawMaterialsDataFile, threads);
+            return;
+        }
+
         int ventureNumber = 1;
 //        CubicSplineInterpolator spline = new CubicSplineInterpolator(data.getXData(ventureNumber),
 //                                                                     data.getYData(ventureNumber),
@@ -18,5 +48,78 @@ public class Main {
         newDistColumn newTest = new newDistColumn(337, data, 1, 0.00001);
 
     }
-}
 
+    /*
+     * Each venture is loaded, fitted, solved and written by its own task, so the batch takes about as long as the
+     * slowest venture. A venture that fails is reported in the summary and does not stop the others.
+     */
+    public static List<ColumnDesign> runBatch(EquilibriumData data, String rawMaterialsDataFile, int threads)
+                                              throws IOException, InterruptedException {
+        if (threads < 1) throw new IllegalArgumentException("A batch needs at least one thread");
+        int ventures = Math.min(data.getNumberOfVentures(),
+                                SpeciesCatalog.open(rawMaterialsDataFile).getNumberOfVentures());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, ventures)));
+        List<Future<ColumnDesign>> results = new ArrayList<>();
+        try {
+            for (int ventureNumber = 1; ventureNumber <= ventures; ++ventureNumber) {
+                int venture = ventureNumber;
+                results.add(executor.submit(() -> solveVenture(data, rawMaterialsDataFile, venture)));
+            }
+
+            List<ColumnDesign> designs = new ArrayList<>();
+            for (Future<ColumnDesign> result : results) {
+                try {
+                    designs.add(result.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) throw (IOException) cause;
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    if (cause instanceof Error) throw (Error) cause;
+                    throw new IllegalStateException(cause);
+                }
+            }
+            printSummary(designs);
+            try (ResultWriter writer = new ResultWriter("BatchSummary.csv", ResultWriter.Format.CSV,
+                                                        ColumnDesign.columnNames(), false)) {
+                for (ColumnDesign design : designs) design.writeTo(writer);
+            }
+            return designs;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ColumnDesign solveVenture(EquilibriumData data, String rawMaterialsDataFile, int ventureNumber)
+                                             throws IOException {
+        ColumnDesign design;
+        try {
+            ColumnSession session = new ColumnSession(rawMaterialsDataFile, data, ventureNumber, 0.00001);
+            design = session.solve(FEED_TEMPERATURE, new SolveOptions().setKeepTrayPoints(true));
+        } catch (IllegalArgumentException e) {
+            return new ColumnDesign(ventureNumber, FEED_TEMPERATURE, new SolveOptions().getRefluxMultiplier(),
+                                    e.getMessage());
+        }
+        TrajectoryBuffer trajectory = design.getTrajectory();
+        try (ResultWriter writer = new ResultWriter("DistillationColumnData_venture" + ventureNumber + ".csv")) {
+            for (int i = 0; i < trajectory.size(); ++i) {
+                writer.writeRow(trajectory.getX(i), trajectory.getY(i));
+            }
+        }
+        return design;
+    }
+
+    private static void printSummary(List<ColumnDesign> designs) {
+        System.out.printf("%-8s %8s %10s %12s %12s %12s %12s%n", "venture", "stages", "feed tray", "R", "Rmin",
+                          "D", "B");
+        for (ColumnDesign design : designs) {
+            if (!design.isFeasible()) {
+                System.out.printf("%-8d infeasible: %s%n", design.getVentureNumber(), design.getFailure());
+                continue;
+            }
+            System.out.printf("%-8d %8d %10d %12.5f %12.5f %12.4f %12.4f%n", design.getVentureNumber(),
+                              design.getNumberOfStages(), design.getFeedTray(), design.getRefluxRatio(),
+                              design.getMinimumRefluxRatio(), design.getDistillateFlowRate(),
+                              design.getBottomsFlowRate());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Minimum reflux for a binary column from the McCabe-Thiele diagram. The enriching line at minimum reflux runs
+ * from (xDistillate, xDistillate) with the largest slope needed to stay on or below the equilibrium curve between
+ * the q-line intersection and the distillate. That slope is pinched either where the q-line meets the curve, or
+ * for non-ideal curves at a point further up where the line is tangent to the curve, so only those candidates
+ * are checked instead of walking the pinch point along the curve.
+ */
+public class MinimumReflux {
+
+    private final double pinchX;
+    private final double pinchY;
+    private final double refluxRatio;
+    private final boolean tangentPinch;
+    private final OperatingLine enrichingLine;
+
+    public MinimumReflux(EquilibriumModel interpolator, LinearFunction qLine, double xFeed, double xDistillate)
+                         throws IllegalArgumentException {
+        double qLineX = interpolator.firstIntersection(qLine.getSlope(), qLine.getIntercept(), xFeed,
+                                                       (qLine.getSlope() < 0) ? -1 : 1);
+        if (qLineX == EquilibriumModel.NO_INTERSECTION) { // the curve can sit on the other side of the feed
+            qLineX = interpolator.firstIntersection(qLine.getSlope(), qLine.getIntercept(), xFeed,
+                                                    (qLine.getSlope() < 0) ? 1 : -1);
+        }
+        if ((qLineX == EquilibriumModel.NO_INTERSECTION) || (qLineX >= xDistillate))
+            throw new IllegalArgumentException("The q-line does not meet the equilibrium curve below the distillate");
+
+        double bestX = qLineX;
+        double bestSlope = slopeFromDistillate(interpolator, xDistillate, qLineX);
+        boolean tangent = false;
+        for (double x : interpolator.tangentPoints(xDistillate, xDistillate, qLineX, xDistillate)) {
+            if (x >= xDistillate) continue;
+            SolverMetrics.REFLUX_CANDIDATES.increment();
+            double slope = slopeFromDistillate(interpolator, xDistillate, x);
+            if (slope > bestSlope) {
+                bestSlope = slope;
+                bestX = x;
+                tangent = true;
+            }
+        }
+
+        double refluxRatio = bestSlope / (1 - bestSlope); // L / V = R / (R + 1)
+        // the curve at the pinch is already richer than the distillate, there is no column to design
+        if (!(bestSlope > 0) || !(refluxRatio > 0))
+            throw new IllegalArgumentException("Minimum reflux ratio " + refluxRatio + " is not positive, the"
+                                               + " equilibrium curve at the pinch is above the distillate composition");
+
+        this.pinchX = bestX;
+        this.pinchY = interpolator.interpolateY(bestX);
+        this.tangentPinch = tangent;
+        this.refluxRatio = refluxRatio;
+        this.enrichingLine = new OperatingLine(bestSlope, xDistillate - bestSlope * xDistillate);
+    }
+
+    private static double slopeFromDistillate(EquilibriumModel interpolator, double xDistillate, double x) {
+        return (xDistillate - interpolator.interpolateY(x)) / (xDistillate - x);
+    }
+
+    public double getPinchX() {
+        return this.pinchX;
+    }
+
+    public double getPinchY() {
+        return this.pinchY;
+    }
+
+    public double getRefluxRatio() {
+        return this.refluxRatio;
+    }
+
+    public boolean isTangentPinch() {
+        return this.tangentPinch;
+    }
+
+    public OperatingLine getEnrichingLine() {
+        return this.enrichingLine;
+    }
+
+    public String toString() {
+        return "Minimum reflux ratio " + this.refluxRatio + " pinched at (" + this.pinchX + ", " + this.pinchY + ")"
+               + (this.tangentPinch ? " by a tangent to the curve" : " on the q-line");
+    }
+}
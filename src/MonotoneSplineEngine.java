@@ -0,0 +1,56 @@
+/*
+ * Constrained cubic spline (C. J. C. Kruger, "Constrained Cubic Spline Interpolation for Chemical Engineering
+ * Applications"). Each interior slope is the harmonic mean of the neighbouring secant slopes, or zero where the data
+ * turns (the secants differ in sign or one is flat), and each end slope gives a zero second derivative at the end
+ * of the curve. No system is solved, the spline is only C1, and it does not overshoot the data between knots.
+ */
+final class MonotoneSplineEngine implements SplineEngine {
+
+    static final MonotoneSplineEngine INSTANCE = new MonotoneSplineEngine();
+
+    private MonotoneSplineEngine() {
+    }
+
+    public BoundaryCondition getBoundaryCondition() {
+        return BoundaryCondition.MONOTONE;
+    }
+
+    public void fitSlopes(double[] x, double[] y, int count, double[] slopes, SplineWorkspace workspace)
+                          throws IllegalArgumentException {
+        SplineEngine.checkPoints(x, y, count);
+        int last = count - 1;
+        if (count == 2) {
+            slopes[0] = slopes[1] = (y[1] - y[0]) / (x[1] - x[0]);
+            return;
+        }
+
+        for (int i = 1; i < last; ++i) {
+            slopes[i] = interiorSlope(x, y, i);
+        }
+        slopes[0] = endSlope(x, y, 0, 1, slopes[1]);
+        slopes[last] = endSlope(x, y, last, last - 1, slopes[last - 1]);
+    }
+
+    /*
+     * Slope at knot i on its own, the same value fitSlopes gives it. A point only moves the slopes of its
+     * neighbours, so splines can be patched locally after an edit.
+     */
+    static double slopeAt(double[] x, double[] y, int count, int i) {
+        int last = count - 1;
+        if (count == 2) return (y[1] - y[0]) / (x[1] - x[0]);
+        if (i == 0) return endSlope(x, y, 0, 1, interiorSlope(x, y, 1));
+        if (i == last) return endSlope(x, y, last, last - 1, interiorSlope(x, y, last - 1));
+        return interiorSlope(x, y, i);
+    }
+
+    private static double interiorSlope(double[] x, double[] y, int i) {
+        double left = (y[i] - y[i - 1]) / (x[i] - x[i - 1]);
+        double right = (y[i + 1] - y[i]) / (x[i + 1] - x[i]);
+        if (left * right <= 0) return 0;
+        return 2 / (((x[i + 1] - x[i]) / (y[i + 1] - y[i])) + ((x[i] - x[i - 1]) / (y[i] - y[i - 1])));
+    }
+
+    private static double endSlope(double[] x, double[] y, int end, int next, double nextSlope) {
+        return 3 * (y[end] - y[next]) / (2 * (x[end] - x[next])) - (nextSlope / 2);
+    }
+}
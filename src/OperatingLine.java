@@ -1,23 +1,20 @@
-public class OperatingLine extends LinearFunction {
+public final class OperatingLine extends LinearFunction {
 
     public OperatingLine(double slope, double intercept) {
-        this.slope = slope;
-        this.intercept = intercept;
+        super(slope, intercept);
     }
 
     // x1 > x0 is assumed here
     public OperatingLine(double x1, double x0, double y1, double y0) {
-        this.slope = (y1 - y0) / (x1 - x0);
-        this.intercept = y1 - this.slope * (x1);
+        super((y1 - y0) / (x1 - x0), y1 - ((y1 - y0) / (x1 - x0)) * (x1));
     }
 
     public OperatingLine(LinearFunction source) {
-        this.intercept = source.intercept;
-        this.slope = source.slope;
+        super(source.slope, source.intercept);
     }
 
     @Override
-    public LinearFunction clone() {
-        return null;
+    public OperatingLine clone() {
+        return new OperatingLine(this);
     }
 }
@@ -1,15 +1,16 @@
-public class QLineFunction extends LinearFunction {
+public final class QLineFunction extends LinearFunction {
 
     public QLineFunction(double q, double x0) {
-        if (q == 1) q = 0.9999;
-        double intercept = -x0 / (q - 1);
-        this.slope = q / (q - 1);
-        this.intercept = intercept;
+        super(adjusted(q) / (adjusted(q) - 1), -x0 / (adjusted(q) - 1));
     }
 
     public QLineFunction(QLineFunction that) {
-        this.intercept = that.intercept;
-        this.slope = that.slope;
+        super(that.slope, that.intercept);
+    }
+
+    // a saturated liquid feed (q = 1) gives a vertical q-line, which is nudged to a very steep one
+    private static double adjusted(double q) {
+        return (q == 1) ? 0.9999 : q;
     }
 
     @Override
@@ -0,0 +1,238 @@
+import java.util.function.DoubleUnaryOperator;
+
+/*
+ * Finds the reflux multiplier, and optionally the feed temperature, that make a column most profitable, using the
+ * economics ChemicalSpecies carries. Profit per hour is
+ *
+ *   D * distillate price + B * bottoms price - F * raw material cost        product revenue
+ *   - stages * stage cost                                                   capital, spread over the hours run
+ *   - (reboiler duty + feed preheat) * energy cost
+ *
+ * where the reboiler boils up V' = (R + 1) D - (1 - q) F at the latent heat of the light component, and the feed
+ * preheat is F Cp (T - supply temperature) when the feed is heated above the supply temperature. The prices are
+ * those of the light component (the file lists the same ones for both species of a venture).
+ *
+ * Each variable is searched by golden section inside its bounds, so the result is found in a few dozen solves on
+ * one ColumnSession and its fitted spline rather than by a grid. More reflux means fewer stages but more boil-up,
+ * so profit rises and then falls with the multiplier; the stage count is a whole number, so the curve has small
+ * steps and the optimum is good to about one stage's worth of reflux. When the feed temperature is free too the
+ * two are searched in turn until neither moves. Designs that cannot be solved count as unprofitable. An optimizer
+ * is not thread safe, but any number of them can share a session.
+ */
+public class RefluxOptimizer {
+
+    private static final double GOLDEN_SECTION = (Math.sqrt(5) - 1) / 2;
+    private static final int MAX_ROUNDS = 4;
+
+    private final ColumnSession session;
+    private final ChemicalSpecies light;
+    private final ChemicalSpecies heavy;
+    private double stageCost = 2;                   // $ / stage h
+    private double energyCost = 1.5e-5;             // $ / kJ
+    private double feedSupplyTemperature = 298.15;  // k
+    private double minimumMultiplier = 1.05;
+    private double maximumMultiplier = 5;
+    private double tolerance = 1e-3;
+    private int evaluations;
+
+    public RefluxOptimizer(ColumnSession session) throws IllegalArgumentException {
+        if (session == null) throw new IllegalArgumentException("Invalid parameters to constructor");
+        this.session = session;
+        ChemicalSpecies[] species = session.getSpecies();
+        boolean firstIsLight = species[0].getNormalBoilingPoint() < species[1].getNormalBoilingPoint();
+        this.light = firstIsLight ? species[0] : species[1];
+        this.heavy = firstIsLight ? species[1] : species[0];
+    }
+
+    public double getStageCost() {
+        return this.stageCost;
+    }
+
+    public RefluxOptimizer setStageCost(double stageCost) throws IllegalArgumentException {
+        if (stageCost < 0) throw new IllegalArgumentException("Stage cost must not be negative");
+        this.stageCost = stageCost;
+        return this;
+    }
+
+    public double getEnergyCost() {
+        return this.energyCost;
+    }
+
+    public RefluxOptimizer setEnergyCost(double energyCost) throws IllegalArgumentException {
+        if (energyCost < 0) throw new IllegalArgumentException("Energy cost must not be negative");
+        this.energyCost = energyCost;
+        return this;
+    }
+
+    public double getFeedSupplyTemperature() {
+        return this.feedSupplyTemperature;
+    }
+
+    public RefluxOptimizer setFeedSupplyTemperature(double feedSupplyTemperature) {
+        this.feedSupplyTemperature = feedSupplyTemperature;
+        return this;
+    }
+
+    public double getMinimumMultiplier() {
+        return this.minimumMultiplier;
+    }
+
+    public double getMaximumMultiplier() {
+        return this.maximumMultiplier;
+    }
+
+    public RefluxOptimizer setMultiplierRange(double minimumMultiplier, double maximumMultiplier)
+                                              throws IllegalArgumentException {
+        if ((minimumMultiplier <= 1) || !(maximumMultiplier > minimumMultiplier))
+            throw new IllegalArgumentException("Multipliers must satisfy 1 < minimum < maximum");
+        this.minimumMultiplier = minimumMultiplier;
+        this.maximumMultiplier = maximumMultiplier;
+        return this;
+    }
+
+    public double getTolerance() {
+        return this.tolerance;
+    }
+
+    // width, relative to its range, to which each variable is searched
+    public RefluxOptimizer setTolerance(double tolerance) throws IllegalArgumentException {
+        if (!(tolerance > 0) || (tolerance >= 1)) throw new IllegalArgumentException("Tolerance must be in (0, 1)");
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    // best reflux multiplier at a fixed feed temperature
+    public Result optimize(double feedTemperature) {
+        this.evaluations = 0;
+        double multiplier = searchMultiplier(feedTemperature);
+        return result(feedTemperature, multiplier);
+    }
+
+    // best reflux multiplier and feed temperature, the temperature between the given bounds
+    public Result optimize(double minimumFeedTemperature, double maximumFeedTemperature)
+                           throws IllegalArgumentException {
+        if (!(maximumFeedTemperature > minimumFeedTemperature))
+            throw new IllegalArgumentException("Maximum feed temperature must be above the minimum");
+        this.evaluations = 0;
+        double feedTemperature = (minimumFeedTemperature + maximumFeedTemperature) / 2;
+        double multiplier = searchMultiplier(feedTemperature);
+        for (int round = 0; round < MAX_ROUNDS; ++round) {
+            double multiplierNow = multiplier;
+            double nextTemperature = goldenSection(minimumFeedTemperature, maximumFeedTemperature,
+                                                   t -> profit(t, multiplierNow));
+            double nextMultiplier = searchMultiplier(nextTemperature);
+            boolean settled = (Math.abs(nextTemperature - feedTemperature)
+                               <= this.tolerance * (maximumFeedTemperature - minimumFeedTemperature))
+                              && (Math.abs(nextMultiplier - multiplier)
+                                  <= this.tolerance * (this.maximumMultiplier - this.minimumMultiplier));
+            feedTemperature = nextTemperature;
+            multiplier = nextMultiplier;
+            if (settled) break;
+        }
+        return result(feedTemperature, multiplier);
+    }
+
+    private double searchMultiplier(double feedTemperature) {
+        return goldenSection(this.minimumMultiplier, this.maximumMultiplier, m -> profit(feedTemperature, m));
+    }
+
+    private Result result(double feedTemperature, double multiplier) {
+        ColumnDesign design = solve(feedTemperature, multiplier);
+        return new Result(design, profit(design), this.evaluations);
+    }
+
+    /*
+     * Maximum of a function on [lower, upper] by golden section, one new evaluation per step. The ends are checked
+     * as well, so an optimum on a bound is found exactly.
+     */
+    private double goldenSection(double lower, double upper, DoubleUnaryOperator profit) {
+        double width = this.tolerance * (upper - lower);
+        double a = lower;
+        double b = upper;
+        double left = b - GOLDEN_SECTION * (b - a);
+        double right = a + GOLDEN_SECTION * (b - a);
+        double leftProfit = profit.applyAsDouble(left);
+        double rightProfit = profit.applyAsDouble(right);
+        while (b - a > width) {
+            if (leftProfit >= rightProfit) {
+                b = right;
+                right = left;
+                rightProfit = leftProfit;
+                left = b - GOLDEN_SECTION * (b - a);
+                leftProfit = profit.applyAsDouble(left);
+            } else {
+                a = left;
+                left = right;
+                leftProfit = rightProfit;
+                right = a + GOLDEN_SECTION * (b - a);
+                rightProfit = profit.applyAsDouble(right);
+            }
+        }
+        double best = (leftProfit >= rightProfit) ? left : right;
+        double bestProfit = Math.max(leftProfit, rightProfit);
+        if ((a == lower) && (profit.applyAsDouble(lower) > bestProfit)) return lower;
+        if ((b == upper) && (profit.applyAsDouble(upper) > bestProfit)) return upper;
+        return best;
+    }
+
+    private double profit(double feedTemperature, double multiplier) {
+        return profit(solve(feedTemperature, multiplier));
+    }
+
+    private ColumnDesign solve(double feedTemperature, double multiplier) {
+        this.evaluations++;
+        try {
+            return this.session.solve(feedTemperature, new SolveOptions().setRefluxMultiplier(multiplier));
+        } catch (IllegalArgumentException e) {
+            return new ColumnDesign(this.session.getVentureNumber(), feedTemperature, multiplier, e.getMessage());
+        }
+    }
+
+    // profit per hour of a solved design under this optimizer's costs, negative infinity if it is infeasible
+    public double profit(ColumnDesign design) {
+        if (!design.isFeasible() || !(design.getRefluxRatio() > 0)) return Double.NEGATIVE_INFINITY;
+        double feedFlowRate = this.light.getMaxFeedRate();
+        double revenue = design.getDistillateFlowRate() * this.light.getDistillateSalePrice()
+                         + design.getBottomsFlowRate() * this.light.getBottomsSalePrice()
+                         - feedFlowRate * this.light.getRawCost();
+
+        double q = newDistColumn.calculateQ(this.light, this.heavy, design.getFeedTemperature());
+        double boilUp = Math.max(0, (design.getRefluxRatio() + 1) * design.getDistillateFlowRate()
+                                    - (1 - q) * feedFlowRate);
+        double averageHeatCapacity = (this.light.getHeatCapacity() + this.heavy.getHeatCapacity()) / 2;
+        double preheat = feedFlowRate * averageHeatCapacity
+                         * Math.max(0, design.getFeedTemperature() - this.feedSupplyTemperature);
+        double duty = boilUp * this.light.getLatentHeat() + preheat;
+
+        return revenue - design.getNumberOfStages() * this.stageCost - duty * this.energyCost;
+    }
+
+    public static final class Result {
+        private final ColumnDesign design;
+        private final double profit;
+        private final int evaluations;
+
+        private Result(ColumnDesign design, double profit, int evaluations) {
+            this.design = design;
+            this.profit = profit;
+            this.evaluations = evaluations;
+        }
+
+        public ColumnDesign getDesign() {
+            return this.design;
+        }
+
+        public double getProfit() {
+            return this.profit;
+        }
+
+        // column solves the search took
+        public int getEvaluations() {
+            return this.evaluations;
+        }
+
+        public String toString() {
+            return this.design + ", profit " + this.profit + " $/h after " + this.evaluations + " solves";
+        }
+    }
+}
@@ -0,0 +1,250 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Writes rows of numbers to a file through a FileChannel and a large direct buffer, either as CSV or as a compact
+ * binary file. Rows are built with value(...) calls and finished with endRow(), so writing allocates nothing.
+ *
+ * CSV numbers are formatted straight into the buffer. A double is written with the fewest decimal places that
+ * parse back to exactly the same double; anything that needs an exponent or more than 15 or so significant digits
+ * goes through Double.toString, so every number round-trips.
+ *
+ * BINARY files hold the magic 'RSLT', a format version, the number of columns, each column name as a length and
+ * UTF-8 bytes, then the rows as little endian doubles.
+ *
+ * With asynchronous flushing a full buffer is handed to a background thread and writing carries on into a second
+ * buffer. Errors from the background thread are thrown by the next flush or by close(). A writer is not thread
+ * safe.
+ */
+public class ResultWriter implements Closeable {
+
+    public enum Format {
+        CSV,
+        BINARY
+    }
+
+    private static final int MAGIC = 0x52534C54; // "RSLT"
+    private static final int VERSION = 1;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int LONGEST_VALUE = 32;    // bytes a formatted value can take, Double.toString included
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17
+    };
+
+    private final FileChannel channel;
+    private final Format format;
+    private final int columns;              // -1 if not fixed
+    private final ExecutorService flusher;  // null when flushing synchronously
+    private final byte[] digits = new byte[20];
+    private ByteBuffer buffer;
+    private ByteBuffer spare;
+    private Future<?> pending;
+    private int valuesInRow;
+
+    public ResultWriter(String fileName) throws IOException {
+        this(fileName, Format.CSV, null, false);
+    }
+
+    /*
+     * columnNames are written as a header line (CSV) or in the file header (BINARY) and fix the number of values
+     * per row. They may be null for CSV, then no header is written and rows can have any length.
+     */
+    public ResultWriter(String fileName, Format format, String[] columnNames, boolean asynchronous)
+                        throws IOException, IllegalArgumentException {
+        if ((format == Format.BINARY) && (columnNames == null))
+            throw new IllegalArgumentException("Binary result files need column names");
+        this.format = format;
+        this.columns = (columnNames == null) ? -1 : columnNames.length;
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                        StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if (asynchronous) {
+            this.spare = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            this.flusher = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "ResultWriter " + fileName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.flusher = null;
+        }
+        if (columnNames != null) writeHeader(columnNames);
+    }
+
+    private void writeHeader(String[] columnNames) throws IOException {
+        if (this.format == Format.BINARY) {
+            this.buffer.putInt(MAGIC).putInt(VERSION).putInt(columnNames.length);
+            for (String name : columnNames) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                ensureRoom(4 + bytes.length);
+                this.buffer.putInt(bytes.length).put(bytes);
+            }
+        } else {
+            for (int i = 0; i < columnNames.length; ++i) {
+                byte[] bytes = columnNames[i].getBytes(StandardCharsets.UTF_8);
+                ensureRoom(bytes.length + 1);
+                if (i > 0) this.buffer.put((byte) ',');
+                this.buffer.put(bytes);
+            }
+            ensureRoom(1);
+            this.buffer.put((byte) '\n');
+        }
+    }
+
+    public ResultWriter value(double value) throws IOException {
+        ensureRoom(LONGEST_VALUE + 1);
+        if (this.format == Format.BINARY) {
+            this.buffer.putDouble(value);
+        } else {
+            if (this.valuesInRow > 0) this.buffer.put((byte) ',');
+            appendDouble(value);
+        }
+        this.valuesInRow++;
+        return this;
+    }
+
+    public ResultWriter value(long value) throws IOException {
+        if (this.format == Format.BINARY) return value((double) value);
+        ensureRoom(LONGEST_VALUE + 1);
+        if (this.valuesInRow > 0) this.buffer.put((byte) ',');
+        appendLong(value);
+        this.valuesInRow++;
+        return this;
+    }
+
+    public void endRow() throws IOException, IllegalStateException {
+        if ((this.columns >= 0) && (this.valuesInRow != this.columns))
+            throw new IllegalStateException("Row has " + this.valuesInRow + " values, expected " + this.columns);
+        if (this.format == Format.CSV) {
+            ensureRoom(1);
+            this.buffer.put((byte) '\n');
+        }
+        this.valuesInRow = 0;
+    }
+
+    public void writeRow(double first, double second) throws IOException {
+        value(first).value(second).endRow();
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (this.buffer.remaining() < bytes) flush();
+    }
+
+    // hands the filled part of the buffer to the channel, in the background if asynchronous
+    public void flush() throws IOException {
+        this.buffer.flip();
+        if (this.flusher == null) {
+            writeFully(this.buffer);
+            this.buffer.clear();
+            return;
+        }
+        awaitPending();
+        ByteBuffer full = this.buffer;
+        this.buffer = this.spare;
+        this.spare = full;
+        this.pending = this.flusher.submit(() -> {
+            writeFully(full);
+            full.clear();
+            return null;
+        });
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) this.channel.write(bytes);
+    }
+
+    private void awaitPending() throws IOException {
+        if (this.pending == null) return;
+        try {
+            this.pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing results", e);
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            this.pending = null;
+        }
+    }
+
+    public void close() throws IOException {
+        if (!this.channel.isOpen()) return;
+        try {
+            flush();
+            awaitPending();
+        } finally {
+            if (this.flusher != null) this.flusher.shutdown();
+            this.channel.close();
+        }
+    }
+
+    /*
+     * Tries 0, 1, 2 ... decimal places: n = round(value * 10^d) is exact below 2^53, and so is 10^d, so when
+     * n / 10^d gives back value the digits of n with the point d places from the right parse back to value too.
+     */
+    private void appendDouble(double value) {
+        double magnitude = Math.abs(value);
+        if ((magnitude >= 1e-3) && (magnitude < 1e7)) {
+            for (int places = 0; places < POWERS_OF_TEN.length; ++places) {
+                double scaled = Math.rint(magnitude * POWERS_OF_TEN[places]);
+                if (scaled >= 0x1p53) break;
+                if (scaled / POWERS_OF_TEN[places] == magnitude) {
+                    if (value < 0) this.buffer.put((byte) '-');
+                    appendFixed((long) scaled, places);
+                    return;
+                }
+            }
+        } else if (value == 0) {
+            if (1 / value < 0) this.buffer.put((byte) '-');
+            this.buffer.put((byte) '0').put((byte) '.').put((byte) '0');
+            return;
+        }
+        String text = Double.toString(value);
+        for (int i = 0; i < text.length(); ++i) this.buffer.put((byte) text.charAt(i));
+    }
+
+    // digits of n with a decimal point places digits from the right, at least one digit either side of it
+    private void appendFixed(long n, int places) {
+        int count = 0;
+        do {
+            this.digits[count++] = (byte) ('0' + (n % 10));
+            n /= 10;
+        } while (n > 0);
+        while (count <= places) this.digits[count++] = '0';
+        for (int i = count - 1; i >= places; --i) this.buffer.put(this.digits[i]);
+        this.buffer.put((byte) '.');
+        if (places == 0) {
+            this.buffer.put((byte) '0');
+        } else {
+            for (int i = places - 1; i >= 0; --i) this.buffer.put(this.digits[i]);
+        }
+    }
+
+    private void appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            String text = Long.toString(value);
+            for (int i = 0; i < text.length(); ++i) this.buffer.put((byte) text.charAt(i));
+            return;
+        }
+        if (value < 0) {
+            this.buffer.put((byte) '-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            this.digits[count++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+        for (int i = count - 1; i >= 0; --i) this.buffer.put(this.digits[i]);
+    }
+}
@@ -0,0 +1,105 @@
+public class SegmentLocator {
+
+    private final double[] knots;
+    private final int segments;
+    private final boolean uniform;      // evenly spaced knots can be found with one multiplication
+    private final double origin;
+    private final double inverseSpacing;
+
+    public SegmentLocator(double[] knots) throws IllegalArgumentException {
+        this(knots, (knots == null) ? 0 : knots.length);
+    }
+
+    // only the first count knots are used, so callers with spare capacity at the end of their arrays can share them
+    public SegmentLocator(double[] knots, int count) throws IllegalArgumentException {
+        if ((knots == null) || (count < 2) || (count > knots.length))
+            throw new IllegalArgumentException("A segment locator needs at least two knots");
+
+        this.knots = new double[count];
+        System.arraycopy(knots, 0, this.knots, 0, count);
+        this.segments = count - 1;
+        this.origin = this.knots[0];
+
+        double spacing = (this.knots[segments] - this.knots[0]) / segments;
+        boolean evenlySpaced = spacing > 0;
+        for (int i = 0; evenlySpaced && (i < segments); ++i) {
+            evenlySpaced = Math.abs((this.knots[i + 1] - this.knots[i]) - spacing) <= 1e-9 * spacing;
+        }
+        this.uniform = evenlySpaced;
+        this.inverseSpacing = evenlySpaced ? 1 / spacing : 0;
+    }
+
+    public int getNumberOfSegments() {
+        return this.segments;
+    }
+
+    public boolean isUniform() {
+        return this.uniform;
+    }
+
+    /*
+     * Returns the index i of the segment [knots[i], knots[i + 1]] containing x. Values before the first knot map
+     * to the first segment and values past the last knot map to the last one, so the caller can extrapolate.
+     * Knots are expected to be ascending; if they are not, the search still returns a segment with
+     * knots[i] <= x < knots[i + 1], which is the same segment a front-to-back scan would find.
+     */
+    public int locate(double x) {
+        if (x < this.knots[1]) return 0;
+        if (x >= this.knots[segments - 1]) return segments - 1;
+
+        if (this.uniform) {
+            int i = (int) ((x - this.origin) * this.inverseSpacing);
+            if (i > segments - 1) i = segments - 1;
+            if (i < 0) i = 0;
+            if ((x < this.knots[i]) && (i > 0)) --i;                        // correct for rounding in the multiply
+            else if ((x >= this.knots[i + 1]) && (i < segments - 1)) ++i;
+            return i;
+        }
+
+        int lo = 0;
+        int hi = segments;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (this.knots[mid] <= x) lo = mid;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // checks the hinted segment and its neighbours before falling back to the full search
+    public int locate(double x, int hint) {
+        if ((hint >= 0) && (hint < segments)) {
+            if (contains(hint, x)) return hint;
+            if ((hint + 1 < segments) && contains(hint + 1, x)) return hint + 1;
+            if ((hint > 0) && contains(hint - 1, x)) return hint - 1;
+        }
+        return locate(x);
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    private boolean contains(int i, double x) {
+        return ((i == 0) || (this.knots[i] <= x))
+            && ((i == segments - 1) || (x < this.knots[i + 1]));
+    }
+
+    /*
+     * Remembers the last segment found so callers that walk along the curve (tray stepping, plotting) usually
+     * find the next segment in one or two comparisons. A cursor is cheap to create and must not be shared
+     * between threads.
+     */
+    public class Cursor {
+        private int segment = 0;
+
+        public int locate(double x) {
+            this.segment = SegmentLocator.this.locate(x, this.segment);
+            return this.segment;
+        }
+
+        public int getSegment() {
+            return this.segment;
+        }
+    }
+}
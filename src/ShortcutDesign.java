@@ -0,0 +1,253 @@
+import java.util.function.Predicate;
+
+/*
+ * Fenske-Underwood-Gilliland estimate of a binary column, for screening designs before the full McCabe-Thiele
+ * solve. The equilibrium curve is replaced by a constant relative volatility, the geometric mean of
+ * alpha = y (1 - x) / (x (1 - y)) over the data points between the bottoms and distillate compositions, and then
+ *
+ *   Fenske      minimum stages  Nmin = ln((xD / (1 - xD)) ((1 - xB) / xB)) / ln(alpha)
+ *   Underwood   minimum reflux  Rmin = alpha xD / (alpha - theta) + (1 - xD) / (1 - theta) - 1, where theta between 1
+ *                               and alpha solves alpha xF / (alpha - theta) + (1 - xF) / (1 - theta) = 1 - q
+ *   Gilliland   stages          Y = 0.75 (1 - X^0.5668) with X = (R - Rmin) / (R + 1) and Y = (N - Nmin) / (N + 1)
+ *               (Eduljee's fit of the correlation)
+ *
+ * Everything is closed form, so an estimate costs a few logarithms. The curve is not really at constant
+ * volatility, so the stages are also worked out at the smallest and largest alpha of the range and the larger
+ * difference from the estimate is reported as getStageUncertainty(). Curves with a tangent pinch are where the
+ * estimate is weakest, and getStageError(ColumnDesign) gives the actual error once the rigorous solve has been done.
+ *
+ * The feed quality and the reflux multiplier mean the same as in newDistColumn. An estimate that cannot be made
+ * (the data has alpha at or below 1 in the range, the compositions are out of order, the minimum reflux comes out
+ * negative so the correlation does not apply) is still returned, with isFeasible() false and the reason in
+ * getFailure().
+ */
+public final class ShortcutDesign {
+
+    private static final int MEAN = 0;
+    private static final int MINIMUM = 1;
+    private static final int MAXIMUM = 2;
+
+    private final int ventureNumber;
+    private final double feedTemperature;
+    private final double refluxMultiplier;
+    private final double relativeVolatility;
+    private final double minimumStages;
+    private final double minimumRefluxRatio;
+    private final double refluxRatio;
+    private final double numberOfStages;
+    private final double stageUncertainty;
+    private final String failure;
+
+    /*
+     * volatility is {geometric mean, smallest, largest} as returned by relativeVolatility(...), so a session can
+     * work it out once and screen any number of designs with it.
+     */
+    public ShortcutDesign(int ventureNumber, ChemicalSpecies[] species, double[] volatility, double feedTemperature,
+                          double refluxMultiplier) throws IllegalArgumentException {
+        if ((species == null) || (species.length != 2) || (volatility == null) || (volatility.length != 3))
+            throw new IllegalArgumentException("An estimate needs two species and a relative volatility");
+        if (refluxMultiplier <= 1)
+            throw new IllegalArgumentException("Reflux multiplier must be greater than 1, got " + refluxMultiplier);
+        this.ventureNumber = ventureNumber;
+        this.feedTemperature = feedTemperature;
+        this.refluxMultiplier = refluxMultiplier;
+        this.relativeVolatility = volatility[MEAN];
+
+        ChemicalSpecies light = species[0];
+        ChemicalSpecies heavy = species[1];
+        if (species[1].getNormalBoilingPoint() <= species[0].getNormalBoilingPoint()) {
+            light = species[1];
+            heavy = species[0];
+        }
+        double xFeed = light.getxFeed();
+        double xDistillate = light.getDistillateFractionRequired();
+        double xBottoms = light.getBottomsFractionRequired();
+        double q = newDistColumn.calculateQ(light, heavy, feedTemperature);
+
+        String failure = null;
+        if (!((xBottoms > 0) && (xBottoms < xFeed) && (xFeed < xDistillate) && (xDistillate < 1)))
+            failure = "Compositions must satisfy 0 < xB < xF < xD < 1";
+        else if (Double.isNaN(volatility[MEAN]))
+            failure = "No equilibrium point lies strictly between 0 and 1";
+        else if (!(volatility[MINIMUM] > 1))
+            failure = "Relative volatility falls to " + volatility[MINIMUM] + " between the product compositions";
+
+        if (failure != null) {
+            this.minimumStages = Double.NaN;
+            this.minimumRefluxRatio = Double.NaN;
+            this.refluxRatio = Double.NaN;
+            this.numberOfStages = Double.NaN;
+            this.stageUncertainty = Double.NaN;
+            this.failure = failure;
+            return;
+        }
+
+        this.minimumStages = fenske(this.relativeVolatility, xDistillate, xBottoms);
+        this.minimumRefluxRatio = underwood(this.relativeVolatility, xFeed, xDistillate, q);
+        this.refluxRatio = refluxMultiplier * this.minimumRefluxRatio;
+        if (!(this.minimumRefluxRatio > 0)) {
+            // the feed's equilibrium vapour is already richer than the distillate, Gilliland has nothing to work on
+            this.numberOfStages = Double.NaN;
+            this.stageUncertainty = Double.NaN;
+            this.failure = "Underwood minimum reflux ratio " + this.minimumRefluxRatio + " is not positive";
+            return;
+        }
+        this.numberOfStages = gilliland(this.minimumStages, this.minimumRefluxRatio, this.refluxRatio);
+
+        // bounds where the correlation does not apply (minimum reflux not positive there either) are left out
+        double uncertainty = Double.NaN;
+        for (double alpha : new double[]{volatility[MINIMUM], volatility[MAXIMUM]}) {
+            double deviation = Math.abs(stagesAt(alpha, xFeed, xDistillate, xBottoms, q) - this.numberOfStages);
+            if (!Double.isNaN(deviation)) uncertainty = Double.isNaN(uncertainty) ? deviation
+                                                                                    : Math.max(uncertainty, deviation);
+        }
+        this.stageUncertainty = uncertainty;
+        this.failure = null;
+    }
+
+    /*
+     * {geometric mean, smallest, largest} of the relative volatility at the data points with xBottoms <= x <=
+     * xDistillate, or at every point strictly inside (0, 1) if fewer than two lie in that range. Points where y = x
+     * give alpha = 1 and make the estimate infeasible, as they should. All three are NaN if no point lies strictly
+     * inside (0, 1).
+     */
+    public static double[] relativeVolatility(double[] x, double[] y, double xBottoms, double xDistillate)
+                                              throws IllegalArgumentException {
+        if ((x == null) || (y == null) || (x.length != y.length))
+            throw new IllegalArgumentException("Invalid equilibrium data");
+        double[] inRange = volatilityOver(x, y, xBottoms, xDistillate);
+        if (inRange[3] >= 2) return new double[]{inRange[MEAN], inRange[MINIMUM], inRange[MAXIMUM]};
+        double[] all = volatilityOver(x, y, 0, 1);
+        return new double[]{all[MEAN], all[MINIMUM], all[MAXIMUM]};
+    }
+
+    // mean, minimum, maximum and count of alpha over points with from <= x <= to and 0 < x, y < 1
+    private static double[] volatilityOver(double[] x, double[] y, double from, double to) {
+        double logSum = 0;
+        double smallest = Double.POSITIVE_INFINITY;
+        double largest = 0;
+        int count = 0;
+        for (int i = 0; i < x.length; ++i) {
+            if ((x[i] <= 0) || (x[i] >= 1) || (y[i] <= 0) || (y[i] >= 1) || (x[i] < from) || (x[i] > to)) continue;
+            double alpha = y[i] * (1 - x[i]) / (x[i] * (1 - y[i]));
+            logSum += Math.log(alpha);
+            smallest = Math.min(smallest, alpha);
+            largest = Math.max(largest, alpha);
+            count++;
+        }
+        if (count == 0) return new double[]{Double.NaN, Double.NaN, Double.NaN, 0};
+        return new double[]{Math.exp(logSum / count), smallest, largest, count};
+    }
+
+    // stages at the same multiple of that volatility's own minimum reflux, NaN if that is not positive
+    private double stagesAt(double alpha, double xFeed, double xDistillate, double xBottoms, double q) {
+        double minimumReflux = underwood(alpha, xFeed, xDistillate, q);
+        if (!(minimumReflux > 0)) return Double.NaN;
+        return gilliland(fenske(alpha, xDistillate, xBottoms), minimumReflux, this.refluxMultiplier * minimumReflux);
+    }
+
+    private static double fenske(double alpha, double xDistillate, double xBottoms) {
+        return Math.log((xDistillate / (1 - xDistillate)) * ((1 - xBottoms) / xBottoms)) / Math.log(alpha);
+    }
+
+    /*
+     * The Underwood equation for two components is a quadratic in theta,
+     *   (1 - q) theta^2 + (alpha xF + 1 - xF - (1 - q) (alpha + 1)) theta - q alpha = 0,
+     * with exactly one root between 1 and alpha; for a saturated liquid feed (q = 1) it is linear.
+     */
+    private static double underwood(double alpha, double xFeed, double xDistillate, double q) {
+        double a = 1 - q;
+        double b = alpha * xFeed + 1 - xFeed - (1 - q) * (alpha + 1);
+        double c = -q * alpha;
+        double theta;
+        if (Math.abs(a) < 1e-12) {
+            theta = -c / b;
+        } else {
+            double root = Math.sqrt(b * b - 4 * a * c);
+            // the stable form of each root, then the one between 1 and alpha
+            double first = (b >= 0) ? (-b - root) / (2 * a) : 2 * c / (-b + root);
+            double second = (b >= 0) ? 2 * c / (-b - root) : (-b + root) / (2 * a);
+            theta = ((first > 1) && (first < alpha)) ? first : second;
+        }
+        return alpha * xDistillate / (alpha - theta) + (1 - xDistillate) / (1 - theta) - 1;
+    }
+
+    // Eduljee's form of the Gilliland correlation
+    private static double gilliland(double minimumStages, double minimumRefluxRatio, double refluxRatio) {
+        double x = (refluxRatio - minimumRefluxRatio) / (refluxRatio + 1);
+        double y = 0.75 * (1 - Math.pow(x, 0.5668));
+        return (y + minimumStages) / (1 - y);
+    }
+
+    public int getVentureNumber() {
+        return this.ventureNumber;
+    }
+
+    public double getFeedTemperature() {
+        return this.feedTemperature;
+    }
+
+    public double getRefluxMultiplier() {
+        return this.refluxMultiplier;
+    }
+
+    public double getRelativeVolatility() {
+        return this.relativeVolatility;
+    }
+
+    public double getMinimumStages() {
+        return this.minimumStages;
+    }
+
+    public double getMinimumRefluxRatio() {
+        return this.minimumRefluxRatio;
+    }
+
+    public double getRefluxRatio() {
+        return this.refluxRatio;
+    }
+
+    // fractional, the McCabe-Thiele count to compare it with is about Math.ceil of this
+    public double getNumberOfStages() {
+        return this.numberOfStages;
+    }
+
+    // how far the stage estimate moves at the smallest or largest relative volatility in the range, NaN if unknown
+    public double getStageUncertainty() {
+        return this.stageUncertainty;
+    }
+
+    public boolean isFeasible() {
+        return this.failure == null;
+    }
+
+    public String getFailure() {
+        return this.failure;
+    }
+
+    /*
+     * Screen for DesignSweep: accepts feasible designs unless even the low end of the estimate, stages minus the
+     * uncertainty, needs more than maximumStages. An unknown uncertainty never rejects a design.
+     */
+    public static Predicate<ShortcutDesign> feasibleWithin(double maximumStages) {
+        return estimate -> estimate.isFeasible()
+                           && !(estimate.numberOfStages - estimate.stageUncertainty > maximumStages);
+    }
+
+    // rigorous minus estimated stages for the same design, NaN if either of them is infeasible
+    public double getStageError(ColumnDesign rigorous) {
+        if (!isFeasible() || !rigorous.isFeasible()) return Double.NaN;
+        return rigorous.getNumberOfStages() - this.numberOfStages;
+    }
+
+    public String toString() {
+        if (!isFeasible()) {
+            return "Shortcut venture " + this.ventureNumber + " at " + this.feedTemperature + " K, reflux x"
+                   + this.refluxMultiplier + ": infeasible (" + this.failure + ")";
+        }
+        return "Shortcut venture " + this.ventureNumber + " at " + this.feedTemperature + " K, reflux x"
+               + this.refluxMultiplier + ": alpha = " + this.relativeVolatility + ", Nmin = " + this.minimumStages
+               + ", Rmin = " + this.minimumRefluxRatio + ", N = " + this.numberOfStages + " +/- "
+               + this.stageUncertainty;
+    }
+}
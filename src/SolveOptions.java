@@ -0,0 +1,50 @@
+public class SolveOptions {
+
+    private double refluxMultiplier = 1.5;  // real reflux ratio as a multiple of the minimum
+    private boolean keepTrayPoints = false; // keep the McCabe-Thiele staircase in the result
+    private StageConsumer stageConsumer;    // also sees every stage as it is stepped, may be null
+
+    public SolveOptions() {
+        ;
+    }
+
+    public SolveOptions(SolveOptions that) {
+        this.refluxMultiplier = that.refluxMultiplier;
+        this.keepTrayPoints = that.keepTrayPoints;
+        this.stageConsumer = that.stageConsumer;
+    }
+
+    public double getRefluxMultiplier() {
+        return this.refluxMultiplier;
+    }
+
+    public SolveOptions setRefluxMultiplier(double refluxMultiplier) throws IllegalArgumentException {
+        if (refluxMultiplier <= 1)
+            throw new IllegalArgumentException("Reflux multiplier must be greater than 1, got " + refluxMultiplier);
+        this.refluxMultiplier = refluxMultiplier;
+        return this;
+    }
+
+    public boolean getKeepTrayPoints() {
+        return this.keepTrayPoints;
+    }
+
+    public SolveOptions setKeepTrayPoints(boolean keepTrayPoints) {
+        this.keepTrayPoints = keepTrayPoints;
+        return this;
+    }
+
+    public StageConsumer getStageConsumer() {
+        return this.stageConsumer;
+    }
+
+    // the consumer is called from the solving thread, so one shared between sweep threads must be thread safe
+    public SolveOptions setStageConsumer(StageConsumer stageConsumer) {
+        this.stageConsumer = stageConsumer;
+        return this;
+    }
+
+    public SolveOptions clone() {
+        return new SolveOptions(this);
+    }
+}
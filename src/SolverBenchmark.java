@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.function.DoubleSupplier;
+
+/*
+ * Throughput and allocation benchmarks for the spline classes, the intersection solvers, tray stepping and whole
+ * column solves. Each case is warmed up, then run for a fixed time; the table reports operations per second,
+ * nanoseconds per operation and bytes allocated per operation (the latter needs a HotSpot JVM).
+ *
+ * Usage: java SolverBenchmark [equilibriumDataFile] [speciesFile]
+ * Run with -XX:+UseParallelGC -Xms1g to keep garbage collection out of the timings.
+ */
+public class SolverBenchmark {
+
+    private static final long WARMUP_NANOS = 500_000_000L;
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+    private static final int[] POINT_COUNTS = {12, 100, 1000, 10000};
+
+    private static volatile double sink; // keeps the JIT from discarding benchmark results
+
+    public static void main(String[] args) throws IOException {
+        String equilibriumDataFileName = (args.length > 0) ? args[0] : "EquilibriumDataFile";
+        String rawMaterialsDataFile = (args.length > 1) ? args[1] : "RawMaterialPhysicalProperties";
+
+        System.out.printf("%-48s %14s %12s %12s%n", "benchmark", "ops/s", "ns/op", "bytes/op");
+        benchmarkSplines();
+        benchmarkIntersections(equilibriumDataFileName, rawMaterialsDataFile);
+        benchmarkColumns(equilibriumDataFileName, rawMaterialsDataFile);
+        System.out.println("sink = " + sink);
+    }
+
+    private static void benchmarkSplines() {
+        for (int n : POINT_COUNTS) {
+            double[] x = new double[n];
+            double[] y = new double[n];
+            syntheticCurve(x, y, 2.5);
+
+            measure("CubicSpline construct n=" + n, () -> new CubicSpline(x, y, 0.00001).interpolateY(0.5));
+            measure("AlsoCubicSpline construct n=" + n, () -> new AlsoCubicSpline(x, y, 0.00001).calculateY(0.5));
+            measure("CubicSplineInterpolator construct n=" + n,
+                    () -> new CubicSplineInterpolator(x, y, 0.00001).interpolateY(0.5));
+            measure("ConstantVolatilityModel fit n=" + n,
+                    () -> ConstantVolatilityModel.fit(x, y).getRelativeVolatility());
+
+            SplineWorkspace workspace = new SplineWorkspace(n);
+            double[][] coefficients = new double[4][n - 1];
+            for (SplineEngine engine : new SplineEngine[]{SplineEngine.natural(), SplineEngine.monotone()}) {
+                measure("SplineEngine " + engine.getBoundaryCondition() + " refit n=" + n, () -> {
+                    engine.fitLocal(x, y, n, coefficients, workspace);
+                    return coefficients[0][0];
+                });
+            }
+
+            CubicSpline cubicSpline = new CubicSpline(x, y, 0.00001);
+            AlsoCubicSpline alsoCubicSpline = new AlsoCubicSpline(x, y, 0.00001);
+            CubicSplineInterpolator interpolator = new CubicSplineInterpolator(x, y, 0.00001);
+            double[] points = new double[1024];
+            double[] out = new double[points.length];
+            for (int i = 0; i < points.length; ++i) points[i] = (i + 0.5) / points.length;
+
+            measure("CubicSpline interpolateY n=" + n, new DoubleSupplier() {
+                private int i = 0;
+                public double getAsDouble() {
+                    i = (i + 1) & 1023;
+                    return cubicSpline.interpolateY(points[i]);
+                }
+            });
+            measure("AlsoCubicSpline calculateY n=" + n, new DoubleSupplier() {
+                private int i = 0;
+                public double getAsDouble() {
+                    i = (i + 1) & 1023;
+                    return alsoCubicSpline.calculateY(points[i]);
+                }
+            });
+            measure("CubicSplineInterpolator interpolateY n=" + n, new DoubleSupplier() {
+                private int i = 0;
+                public double getAsDouble() {
+                    i = (i + 1) & 1023;
+                    return interpolator.interpolateY(points[i]);
+                }
+            });
+            measure("CubicSplineInterpolator interpolateX n=" + n, new DoubleSupplier() {
+                private int i = 0;
+                public double getAsDouble() {
+                    i = (i + 1) & 1023;
+                    return interpolator.interpolateX(points[i]);
+                }
+            });
+            ConstantVolatilityModel model = ConstantVolatilityModel.fit(x, y);
+            measure("ConstantVolatilityModel interpolateX n=" + n, new DoubleSupplier() {
+                private int i = 0;
+                public double getAsDouble() {
+                    i = (i + 1) & 1023;
+                    return model.interpolateX(points[i]);
+                }
+            });
+            TabulatedSplineInterpolator table = TabulatedSplineInterpolator.forMaximumError(interpolator, 1e-8);
+            measure("Tabulated interpolateY n=" + n + " grid=" + table.getGridSize(), new DoubleSupplier() {
+                private int i = 0;
+                public double getAsDouble() {
+                    i = (i + 1) & 1023;
+                    return table.interpolateY(points[i]);
+                }
+            });
+            measure("Tabulated interpolateX n=" + n + " grid=" + table.getGridSize(), new DoubleSupplier() {
+                private int i = 0;
+                public double getAsDouble() {
+                    i = (i + 1) & 1023;
+                    return table.interpolateX(points[i]);
+                }
+            });
+            measure("CubicSplineInterpolator batch 1024 n=" + n, () -> {
+                interpolator.interpolateY(points, out);
+                return out[511];
+            });
+        }
+    }
+
+    private static void benchmarkIntersections(String equilibriumDataFileName, String rawMaterialsDataFile)
+                                               throws IOException {
+        EquilibriumData data = new EquilibriumData(equilibriumDataFileName);
+        ColumnSession session = new ColumnSession(rawMaterialsDataFile, data, 1, 0.00001);
+        CubicSplineInterpolator interpolator = session.getInterpolator();
+        newDistColumn column = new newDistColumn(337, session.getSpecies(), interpolator, 1.5);
+        QLineFunction qLine = column.getQLine();
+        OperatingLine enrichingLine = column.getEnrichingLine();
+        double xFeed = qLine.getIntercept() / (1 - qLine.getSlope()); // both lines start on the diagonal y = x
+        double xDistillate = enrichingLine.getIntercept() / (1 - enrichingLine.getSlope());
+
+        measure("QLInt venture 1", () -> interpolator.QLInt(qLine, xFeed));
+        measure("ELInt venture 1", () -> interpolator.ELInt(enrichingLine, xDistillate));
+        measure("MinimumReflux venture 1", () -> new MinimumReflux(interpolator, qLine, xFeed, xDistillate)
+                                                        .getRefluxRatio());
+    }
+
+    private static void benchmarkColumns(String equilibriumDataFileName, String rawMaterialsDataFile)
+                                         throws IOException {
+        EquilibriumData data = new EquilibriumData(equilibriumDataFileName);
+        ColumnSession easy = new ColumnSession(rawMaterialsDataFile, data, 1, 0.00001);
+        for (double multiplier : new double[]{3.0, 1.05}) {
+            newDistColumn column = new newDistColumn(337, easy.getSpecies(), easy.getInterpolator(), multiplier);
+            OperatingLine enrichingLine = column.getEnrichingLine();
+            OperatingLine rectifyingLine = column.getRectifyingLine();
+            double feedX = column.getQLine().calculateIntersectionPointX(enrichingLine);
+            measure("calcNumTray venture 1 reflux x" + multiplier,
+                    () -> column.calcNumTray(enrichingLine, rectifyingLine, feedX, StageConsumer.DISCARD));
+            TrajectoryBuffer trajectory = new TrajectoryBuffer();
+            measure("calcNumTray buffered venture 1 reflux x" + multiplier, () -> {
+                trajectory.clear();
+                return column.calcNumTray(enrichingLine, rectifyingLine, feedX, trajectory);
+            });
+        }
+
+        // venture 1's species on a curve at constant relative volatility, stepped on the spline and the closed form
+        double[] x = new double[12];
+        double[] y = new double[12];
+        syntheticCurve(x, y, 2.5);
+        CubicSplineInterpolator spline = new CubicSplineInterpolator(x, y, 0.00001);
+        ConstantVolatilityModel model = ConstantVolatilityModel.fit(x, y);
+        measure("newDistColumn solve constant alpha spline",
+                () -> new newDistColumn(337, easy.getSpecies(), spline, 1.5, StageConsumer.DISCARD)
+                          .getNumberOfTrays());
+        measure("newDistColumn solve constant alpha closed form",
+                () -> new newDistColumn(337, easy.getSpecies(), model, 1.5, StageConsumer.DISCARD)
+                          .getNumberOfTrays());
+
+        for (int ventureNumber = 1; ventureNumber <= data.getNumberOfVentures(); ++ventureNumber) {
+            ColumnSession session;
+            try {
+                session = new ColumnSession(rawMaterialsDataFile, data, ventureNumber, 0.00001);
+                session.solve(337);
+            } catch (IllegalArgumentException | IOException e) {
+                System.out.printf("%-48s %s%n", "newDistColumn solve venture " + ventureNumber, "skipped: " + e.getMessage());
+                continue;
+            }
+            ColumnSession solved = session;
+            measure("newDistColumn solve venture " + ventureNumber,
+                    () -> solved.solve(337).getNumberOfStages());
+            measure("ShortcutDesign screen venture " + ventureNumber,
+                    () -> solved.screen(337).getMinimumStages());
+            int venture = ventureNumber;
+            measure("newDistColumn load+fit+solve venture " + venture, () -> {
+                try {
+                    return new ColumnSession(rawMaterialsDataFile, data, venture, 0.00001).solve(337).getNumberOfStages();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+    }
+
+    // relative volatility curve y = a * x / (1 + (a - 1) * x) on evenly spaced x
+    private static void syntheticCurve(double[] x, double[] y, double relativeVolatility) {
+        for (int i = 0; i < x.length; ++i) {
+            x[i] = (double) i / (x.length - 1);
+            y[i] = relativeVolatility * x[i] / (1 + (relativeVolatility - 1) * x[i]);
+        }
+    }
+
+    private static void measure(String name, DoubleSupplier operation) {
+        double accumulator = 0;
+        long end = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 64; ++i) accumulator += operation.getAsDouble();
+        }
+
+        long operations = 0;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        end = start + MEASURE_NANOS;
+        long now;
+        do {
+            for (int i = 0; i < 64; ++i) accumulator += operation.getAsDouble();
+            operations += 64;
+            now = System.nanoTime();
+        } while (now < end);
+        long allocatedAfter = allocatedBytes();
+        long allocated = (allocatedBefore < 0) ? -1 : allocatedAfter - allocatedBefore;
+        sink += accumulator;
+
+        double nanosPerOperation = (double) (now - start) / operations;
+        System.out.printf("%-48s %14.0f %12.1f %12s%n", name, 1e9 / nanosPerOperation, nanosPerOperation,
+                          (allocated < 0) ? "n/a" : String.format("%.1f", (double) allocated / operations));
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,216 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Counters, timers and histograms for the solver hot paths. Everything is off by default: while disabled every
+ * record call is a single read of a volatile flag, so the instrumentation can stay in the code. When enabled the
+ * metrics use striped adders, so concurrent solvers do not contend on them. snapshot() copies the current values
+ * for reporting and reset() clears them.
+ *
+ * Run with -Dsolver.metrics=true or call setEnabled(true) to switch them on.
+ */
+public final class SolverMetrics {
+
+    private static volatile boolean enabled = Boolean.getBoolean("solver.metrics");
+
+    public static final Counter SPLINE_EVALUATIONS = new Counter("spline.evaluations");
+    public static final Counter INTERSECTION_SOLVES = new Counter("intersection.solves");
+    public static final Counter INTERSECTION_ITERATIONS = new Counter("intersection.iterations");
+    public static final Counter REFLUX_CANDIDATES = new Counter("reflux.candidates");
+    public static final Counter COLUMN_SOLVES = new Counter("column.solves");
+    public static final Histogram TRAYS_PER_COLUMN = new Histogram("column.trays");
+    public static final Timer MINIMUM_REFLUX_TIME = new Timer("column.minimumReflux");
+    public static final Timer TRAY_STEPPING_TIME = new Timer("column.traySteps");
+    public static final Timer COLUMN_SOLVE_TIME = new Timer("column.solve");
+
+    private static final Counter[] COUNTERS = {SPLINE_EVALUATIONS, INTERSECTION_SOLVES, INTERSECTION_ITERATIONS,
+                                               REFLUX_CANDIDATES, COLUMN_SOLVES};
+    private static final Histogram[] HISTOGRAMS = {TRAYS_PER_COLUMN};
+    private static final Timer[] TIMERS = {MINIMUM_REFLUX_TIME, TRAY_STEPPING_TIME, COLUMN_SOLVE_TIME};
+
+    private SolverMetrics() {
+        ;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        SolverMetrics.enabled = enabled;
+    }
+
+    public static void reset() {
+        for (Counter counter : COUNTERS) counter.reset();
+        for (Histogram histogram : HISTOGRAMS) histogram.reset();
+        for (Timer timer : TIMERS) timer.histogram.reset();
+    }
+
+    public static Snapshot snapshot() {
+        return new Snapshot();
+    }
+
+    public static final class Counter {
+        private final String name;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            if (enabled) this.value.increment();
+        }
+
+        public void add(long amount) {
+            if (enabled) this.value.add(amount);
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        private void reset() {
+            this.value.reset();
+        }
+    }
+
+    /*
+     * Power-of-two buckets: bucket k counts values v with 2^(k-1) <= v < 2^k, bucket 0 counts zero and negative
+     * values. Coarse, but recording is one array increment and the buckets never need resizing.
+     */
+    public static final class Histogram {
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        private Histogram(String name) {
+            this.name = name;
+        }
+
+        public void record(long value) {
+            if (!enabled) return;
+            this.buckets.incrementAndGet((value <= 0) ? 0 : 64 - Long.numberOfLeadingZeros(value));
+            this.count.increment();
+            this.sum.add(value);
+            this.max.accumulate(value);
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        private void reset() {
+            for (int i = 0; i < this.buckets.length(); ++i) this.buckets.set(i, 0);
+            this.count.reset();
+            this.sum.reset();
+            this.max.reset();
+        }
+
+        // upper bound of the bucket holding the given quantile (0 to 1)
+        private long quantileBound(double quantile, long total) {
+            long target = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < this.buckets.length(); ++i) {
+                seen += this.buckets.get(i);
+                if ((seen >= target) && (seen > 0)) return (i == 0) ? 0 : (i == 63) ? Long.MAX_VALUE : (1L << i) - 1;
+            }
+            return 0;
+        }
+    }
+
+    // wall-clock timer in nanoseconds, use as: long start = TIMER.start(); ... TIMER.stop(start);
+    public static final class Timer {
+        private final Histogram histogram;
+
+        private Timer(String name) {
+            this.histogram = new Histogram(name);
+        }
+
+        public long start() {
+            return enabled ? System.nanoTime() : 0;
+        }
+
+        public void stop(long start) {
+            if (start != 0) this.histogram.record(System.nanoTime() - start);
+        }
+
+        public String getName() {
+            return this.histogram.name;
+        }
+    }
+
+    public static final class Snapshot {
+        private final Map<String, Long> counters = new LinkedHashMap<>();
+        private final Map<String, long[]> distributions = new LinkedHashMap<>(); // count, sum, max, p50, p99
+
+        private Snapshot() {
+            for (Counter counter : COUNTERS) {
+                this.counters.put(counter.name, counter.value.sum());
+            }
+            for (Histogram histogram : HISTOGRAMS) {
+                this.distributions.put(histogram.name, summarise(histogram));
+            }
+            for (Timer timer : TIMERS) {
+                this.distributions.put(timer.histogram.name + ".nanos", summarise(timer.histogram));
+            }
+        }
+
+        private static long[] summarise(Histogram histogram) {
+            long count = histogram.count.sum();
+            long max = (count == 0) ? 0 : histogram.max.get();
+            return new long[]{count, histogram.sum.sum(), max,
+                              histogram.quantileBound(0.5, count), histogram.quantileBound(0.99, count)};
+        }
+
+        public long getCounter(String name) {
+            Long value = this.counters.get(name);
+            return (value == null) ? 0 : value;
+        }
+
+        public Map<String, Long> getCounters() {
+            return new LinkedHashMap<>(this.counters);
+        }
+
+        // count, sum, max and the bucket bounds of the median and 99th percentile for a histogram or timer
+        public long[] getDistribution(String name) {
+            long[] values = this.distributions.get(name);
+            return (values == null) ? null : values.clone();
+        }
+
+        public String toCSV() {
+            StringBuilder builder = new StringBuilder("metric,count,sum,max,p50,p99\n");
+            for (Map.Entry<String, Long> entry : this.counters.entrySet()) {
+                builder.append(entry.getKey()).append(',').append(entry.getValue()).append(",,,,\n");
+            }
+            for (Map.Entry<String, long[]> entry : this.distributions.entrySet()) {
+                long[] values = entry.getValue();
+                builder.append(entry.getKey());
+                for (long value : values) builder.append(',').append(value);
+                builder.append('\n');
+            }
+            return builder.toString();
+        }
+
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (Map.Entry<String, Long> entry : this.counters.entrySet()) {
+                builder.append(entry.getKey()).append(" = ").append(entry.getValue()).append('\n');
+            }
+            for (Map.Entry<String, long[]> entry : this.distributions.entrySet()) {
+                long[] values = entry.getValue();
+                builder.append(entry.getKey()).append(": count = ").append(values[0])
+                       .append(" mean = ").append((values[0] == 0) ? 0 : values[1] / values[0])
+                       .append(" max = ").append(values[2])
+                       .append(" p50 <= ").append(values[3])
+                       .append(" p99 <= ").append(values[4]).append('\n');
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Physical property file parsed once into an index by venture number and by species name. The file holds two
+ * species lines per venture: the name followed by the ten ChemicalSpecies parameters.
+ *
+ * The parsed contents are an immutable snapshot behind an atomic reference, so any number of solver threads can
+ * read the catalog while refresh() swaps in a newly parsed snapshot when the file changes on disk. Readers always
+ * see either the old or the new file, never a mixture. ChemicalSpecies is mutable, so lookups hand out copies.
+ */
+public class SpeciesCatalog {
+
+    private static final Map<Path, SpeciesCatalog> OPEN_CATALOGS = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final AtomicReference<Contents> contents = new AtomicReference<>();
+
+    public SpeciesCatalog(String fileName) throws IOException {
+        this.path = Paths.get(fileName).toAbsolutePath().normalize();
+        this.contents.set(parse(this.path));
+    }
+
+    /*
+     * Shared catalog for a file, parsed on first use. Later calls return the same catalog after checking whether
+     * the file has changed since it was parsed.
+     */
+    public static SpeciesCatalog open(String fileName) throws IOException {
+        Path path = Paths.get(fileName).toAbsolutePath().normalize();
+        SpeciesCatalog catalog = OPEN_CATALOGS.get(path);
+        if (catalog == null) {
+            SpeciesCatalog parsed = new SpeciesCatalog(fileName);
+            catalog = OPEN_CATALOGS.putIfAbsent(path, parsed);
+            if (catalog == null) return parsed;
+        }
+        catalog.refresh();
+        return catalog;
+    }
+
+    // re-parses the file if its size or modification time changed, returns true if a new snapshot was installed
+    public boolean refresh() throws IOException {
+        Contents current = this.contents.get();
+        BasicFileAttributes attributes = Files.readAttributes(this.path, BasicFileAttributes.class);
+        if ((attributes.lastModifiedTime().toMillis() == current.lastModified) && (attributes.size() == current.size))
+            return false;
+        return this.contents.compareAndSet(current, parse(this.path));
+    }
+
+    public void reload() throws IOException {
+        this.contents.set(parse(this.path));
+    }
+
+    public int getNumberOfVentures() {
+        return this.contents.get().ventures.length;
+    }
+
+    // the two species of a venture, numbered from 1 as in the data file
+    public ChemicalSpecies[] getVenture(int ventureNumber) throws IllegalArgumentException {
+        ChemicalSpecies[][] ventures = this.contents.get().ventures;
+        if ((ventureNumber < 1) || (ventureNumber > ventures.length))
+            throw new IllegalArgumentException("Venture " + ventureNumber + " is not in " + this.path);
+        ChemicalSpecies[] pair = ventures[ventureNumber - 1];
+        return new ChemicalSpecies[]{pair[0].clone(), pair[1].clone()};
+    }
+
+    // returns null if no species has that name
+    public ChemicalSpecies getSpecies(String name) {
+        ChemicalSpecies species = this.contents.get().byName.get(name);
+        return (species == null) ? null : species.clone();
+    }
+
+    public String getFileName() {
+        return this.path.toString();
+    }
+
+    private static Contents parse(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        ChemicalSpecies[] species = new ChemicalSpecies[16];
+        int count = 0;
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ++lineNumber;
+                if (line.trim().isEmpty()) continue;
+                String[] splitLine = line.split(",");
+                double[] constructorParameters = new double[splitLine.length - 1];
+                for (int j = 0; j < constructorParameters.length; ++j) {
+                    try {
+                        constructorParameters[j] = Double.parseDouble(splitLine[j + 1].trim());
+                    } catch (NumberFormatException e) {
+                        throw new IOException(path + " line " + lineNumber + ": value " + (j + 1) + " is not a number, "
+                                              + e.getMessage(), e);
+                    }
+                }
+                if (count == species.length) {
+                    ChemicalSpecies[] grown = new ChemicalSpecies[2 * count];
+                    System.arraycopy(species, 0, grown, 0, count);
+                    species = grown;
+                }
+                try {
+                    species[count++] = new ChemicalSpecies(splitLine[0], constructorParameters);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(path + " line " + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        if (count % 2 != 0) throw new IOException(path + " has a venture with only one species");
+
+        ChemicalSpecies[][] ventures = new ChemicalSpecies[count / 2][];
+        Map<String, ChemicalSpecies> byName = new HashMap<>();
+        for (int v = 0; v < ventures.length; ++v) {
+            ventures[v] = new ChemicalSpecies[]{species[2 * v], species[2 * v + 1]};
+            byName.putIfAbsent(species[2 * v].getName(), species[2 * v]);
+            byName.putIfAbsent(species[2 * v + 1].getName(), species[2 * v + 1]);
+        }
+        return new Contents(ventures, Collections.unmodifiableMap(byName),
+                            attributes.lastModifiedTime().toMillis(), attributes.size());
+    }
+
+    private static final class Contents {
+        private final ChemicalSpecies[][] ventures;
+        private final Map<String, ChemicalSpecies> byName;
+        private final long lastModified;
+        private final long size;
+
+        private Contents(ChemicalSpecies[][] ventures, Map<String, ChemicalSpecies> byName, long lastModified, long size) {
+            this.ventures = ventures;
+            this.byName = byName;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/*
+ * On-disk cache of fitted CubicSplineInterpolator coefficients so a new process can skip refitting curves whose
+ * data has not changed. Each curve is stored in its own file named after the SHA-256 hash of its x and y values:
+ *
+ *   int    magic 'SPLC'
+ *   int    format version
+ *   byte[32] SHA-256 of the source data
+ *   int    number of points n
+ *   double[n] x values, double[n] y values
+ *   int    number of coefficient matrices m
+ *   m times: double[4 * (n - 1)] rows A, B, C, D
+ *
+ * Files are read through a read-only memory map and written to a temporary file that is then moved into place, so
+ * a reader never sees a partly written file. A file whose header or hash does not match is treated as a miss, so
+ * files written by an older version are simply refitted.
+ */
+public class SplineCache {
+
+    private static final int MAGIC = 0x53504C43; // "SPLC"
+    private static final int VERSION = 2;     // 1 also stored the coefficients of a separately fitted inverse
+    private static final int HASH_BYTES = 32;
+
+    private final Path directory;
+
+    public SplineCache(String directory) throws IOException {
+        this.directory = Paths.get(directory);
+        Files.createDirectories(this.directory);
+    }
+
+    // cached interpolator for the data, or a freshly fitted one that is then written to the cache
+    public CubicSplineInterpolator getOrFit(double[] xValues, double[] yValues, double epsilon) throws IOException {
+        CubicSplineInterpolator interpolator = load(xValues, yValues, epsilon);
+        if (interpolator == null) {
+            interpolator = new CubicSplineInterpolator(xValues, yValues, epsilon);
+            store(interpolator);
+        }
+        return interpolator;
+    }
+
+    // returns null when the data has not been cached yet
+    public CubicSplineInterpolator load(double[] xValues, double[] yValues, double epsilon) throws IOException {
+        byte[] hash = contentHash(xValues, yValues);
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(fileFor(hash), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        int points = xValues.length;
+        long expectedSize = 4 + 4 + HASH_BYTES + 4 + 16L * points + 4 + 32L * (points - 1);
+        if ((buffer.capacity() != expectedSize) || (buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION))
+            return null;
+        byte[] storedHash = new byte[HASH_BYTES];
+        buffer.get(storedHash);
+        if (!Arrays.equals(hash, storedHash) || (buffer.getInt() != points)) return null;
+
+        DoubleBuffer doubles = buffer.asDoubleBuffer();
+        double[] x = new double[points];
+        double[] y = new double[points];
+        doubles.get(x).get(y);
+        if (!Arrays.equals(x, xValues) || !Arrays.equals(y, yValues)) return null; // hash collision
+
+        buffer.position(buffer.position() + 16 * points);
+        if (buffer.getInt() != 1) return null;
+        double[][] coefficients = readMatrix(buffer.asDoubleBuffer(), points - 1);
+        return new CubicSplineInterpolator(x, y, epsilon, coefficients);
+    }
+
+    public void store(CubicSplineInterpolator interpolator) throws IOException {
+        double[] x = interpolator.xValues();
+        double[] y = interpolator.yValues();
+        byte[] hash = contentHash(x, y);
+        int points = x.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + HASH_BYTES + 4 + 16 * points + 4 + 32 * (points - 1));
+        buffer.putInt(MAGIC).putInt(VERSION).put(hash).putInt(points);
+        buffer.asDoubleBuffer().put(x).put(y);
+        buffer.position(buffer.position() + 16 * points);
+        buffer.putInt(1);
+        writeMatrix(buffer.asDoubleBuffer(), interpolator.coefficientMatrix());
+        buffer.position(buffer.capacity());
+        buffer.flip();
+
+        Path target = fileFor(hash);
+        Path temporary = Files.createTempFile(this.directory, "spline", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static double[][] readMatrix(DoubleBuffer doubles, int segments) {
+        double[][] matrix = new double[4][segments];
+        for (double[] row : matrix) doubles.get(row);
+        return matrix;
+    }
+
+    private static void writeMatrix(DoubleBuffer doubles, double[][] matrix) {
+        for (double[] row : matrix) doubles.put(row);
+    }
+
+    private Path fileFor(byte[] hash) {
+        StringBuilder name = new StringBuilder(2 * HASH_BYTES + 7);
+        for (byte b : hash) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return this.directory.resolve(name.append(".spline").toString());
+    }
+
+    // SHA-256 over the point count and the raw bits of every x and y value
+    public static byte[] contentHash(double[] xValues, double[] yValues) throws IllegalArgumentException {
+        if ((xValues == null) || (yValues == null) || (xValues.length != yValues.length))
+            throw new IllegalArgumentException("Invalid array parameters");
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 16 * xValues.length);
+        buffer.putInt(xValues.length);
+        buffer.asDoubleBuffer().put(xValues).put(yValues);
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(buffer.array());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+}
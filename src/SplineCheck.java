@@ -0,0 +1,409 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Correctness checks for the spline classes against the shared SplineEngine, run as a program since the project has
+ * no test sources. For every data set (the ventures in the equilibrium data file and a few synthetic curves with
+ * uneven spacing) it checks that
+ *
+ *   - each TridiagonalSplineEngine spline passes through the knots, is C2 at every interior knot and meets its end
+ *     condition: zero second derivative (NATURAL), the given end slopes (CLAMPED) or a continuous third derivative
+ *     at the second and second to last knots (NOT_A_KNOT)
+ *   - the MonotoneSplineEngine spline passes through the knots and is C1
+ *   - CubicSpline and AlsoCubicSpline evaluate exactly the coefficients of SplineEngine.fitLocal, for the default
+ *     engine and for each of the others, and agree with each other
+ *   - a CubicSpline edited in place is the same as one fitted from scratch to the edited points
+ *   - CubicSplineInterpolator's coefficients are bit for bit those of the constrained spline fit it used before
+ *     the engine existed, kept below as legacyCoefficients (for three points or more)
+ *   - one CubicSplineInterpolator, AlsoCubicSpline and (unedited) CubicSpline shared by many threads at once give
+ *     bit for bit the results of a serial run, including the interpolators the threads derive with the with*Point
+ *     edits, and the shared interpolator is left unchanged
+ *
+ * Prints every failure and exits with status 1 if there was one.
+ *
+ * Usage: java SplineCheck [equilibriumDataFile]
+ */
+public class SplineCheck {
+
+    private static final int A = 0;
+    private static final int B = 1;
+    private static final int C = 2;
+    private static final int D = 3;
+    private static final double TOLERANCE = 1e-9;
+    private static final int TASKS = 64;
+    private static final int SAMPLES = 2048;
+
+    private static int checks;
+    private static int failures;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String equilibriumDataFileName = (args.length > 0) ? args[0] : "EquilibriumDataFile";
+        EquilibriumData data = new EquilibriumData(equilibriumDataFileName);
+
+        for (int ventureNumber = 1; ventureNumber <= data.getNumberOfVentures(); ++ventureNumber) {
+            checkDataSet("venture " + ventureNumber, data.getXData(ventureNumber), data.getYData(ventureNumber));
+        }
+        for (int n : new int[]{2, 3, 4, 7, 50}) {
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; ++i) {
+                double t = (double) i / (n - 1);
+                x[i] = t * t * (3 - 2 * t);     // crowded towards both ends
+                y[i] = 2.5 * x[i] / (1 + 1.5 * x[i]);
+            }
+            checkDataSet("synthetic n=" + n, x, y);
+        }
+
+        for (int ventureNumber = 1; ventureNumber <= data.getNumberOfVentures(); ++ventureNumber) {
+            checkConcurrentSharing("venture " + ventureNumber, data.getXData(ventureNumber),
+                                   data.getYData(ventureNumber));
+        }
+        double[] x = new double[1000];
+        double[] y = new double[1000];
+        for (int i = 0; i < x.length; ++i) {
+            x[i] = (double) i / (x.length - 1);
+            y[i] = 2.5 * x[i] / (1 + 1.5 * x[i]);
+        }
+        checkConcurrentSharing("synthetic n=1000", x, y);
+
+        System.out.println(checks + " checks, " + failures + " failures");
+        if (failures > 0) System.exit(1);
+    }
+
+    private static void checkDataSet(String name, double[] x, double[] y) {
+        int n = x.length;
+        double startSlope = (y[1] - y[0]) / (x[1] - x[0]) * 1.25;
+        double endSlope = (y[n - 1] - y[n - 2]) / (x[n - 1] - x[n - 2]) * 0.75;
+        SplineEngine[] engines = {SplineEngine.natural(), SplineEngine.clamped(startSlope, endSlope),
+                                  SplineEngine.notAKnot(), SplineEngine.monotone()};
+
+        for (SplineEngine engine : engines) {
+            String label = name + " " + engine.getBoundaryCondition();
+            double[][] local = new double[4][n - 1];
+            engine.fitLocal(x, y, n, local, new SplineWorkspace());
+            checkKnots(label, x, y, local);
+            checkContinuity(label, x, local, (engine.getBoundaryCondition() == SplineEngine.BoundaryCondition.MONOTONE)
+                                             ? 1 : 2);
+            checkEndCondition(label, engine.getBoundaryCondition(), x, local, startSlope, endSlope);
+            checkSplineClasses(label, x, y, engine, local);
+        }
+        checkSplineClasses(name + " default", x, y, null, fitted(SplineEngine.natural(), x, y));
+        checkEdits(name, x, y);
+
+        if (n < 3) return; // the old fit did not give the straight line through two points, the engine does
+        double[][] legacy = legacyCoefficients(x, y);
+        double[][] current = new CubicSplineInterpolator(x, y, 0.00001).coefficientMatrix();
+        for (int k = 0; k < 4; ++k) {
+            for (int i = 0; i < n - 1; ++i) {
+                check(Double.doubleToLongBits(legacy[k][i]) == Double.doubleToLongBits(current[k][i]),
+                      name + " interpolator coefficient " + k + "," + i + " " + current[k][i] + " was " + legacy[k][i]);
+            }
+        }
+    }
+
+    private static double[][] fitted(SplineEngine engine, double[] x, double[] y) {
+        double[][] local = new double[4][x.length - 1];
+        engine.fitLocal(x, y, x.length, local, new SplineWorkspace());
+        return local;
+    }
+
+    private static void checkKnots(String label, double[] x, double[] y, double[][] local) {
+        int segments = x.length - 1;
+        for (int i = 0; i < segments; ++i) {
+            checkClose(value(local, i, 0), y[i], label + " value at knot " + i);
+            checkClose(value(local, i, x[i + 1] - x[i]), y[i + 1], label + " value at knot " + (i + 1));
+        }
+    }
+
+    // derivatives 0 .. order of neighbouring segments agree at every interior knot
+    private static void checkContinuity(String label, double[] x, double[][] local, int order) {
+        for (int i = 1; i < x.length - 1; ++i) {
+            double h = x[i] - x[i - 1];
+            double[] left = {value(local, i - 1, h), slope(local, i - 1, h), curvature(local, i - 1, h)};
+            double[] right = {value(local, i, 0), slope(local, i, 0), curvature(local, i, 0)};
+            for (int k = 0; k <= order; ++k) {
+                checkClose(left[k], right[k], label + " derivative " + k + " at knot " + i);
+            }
+        }
+    }
+
+    private static void checkEndCondition(String label, SplineEngine.BoundaryCondition condition, double[] x,
+                                          double[][] local, double startSlope, double endSlope) {
+        int last = x.length - 2;
+        double hLast = x[last + 1] - x[last];
+        switch (condition) {
+            case NATURAL:
+                if (x.length == 2) return;  // the straight line
+                checkClose(curvature(local, 0, 0), 0, label + " second derivative at the start");
+                checkClose(curvature(local, last, hLast), 0, label + " second derivative at the end");
+                break;
+            case CLAMPED:
+                checkClose(slope(local, 0, 0), startSlope, label + " slope at the start");
+                checkClose(slope(local, last, hLast), endSlope, label + " slope at the end");
+                break;
+            case NOT_A_KNOT:
+                if (x.length < 4) return;   // the line or the parabola, one cubic already
+                checkClose(local[A][0], local[A][1], label + " third derivative at knot 1");
+                checkClose(local[A][last - 1], local[A][last], label + " third derivative at knot " + last);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // the spline classes evaluate exactly what the engine fitted; engine null means their default constructor
+    private static void checkSplineClasses(String label, double[] x, double[] y, SplineEngine engine,
+                                           double[][] local) {
+        CubicSpline cubicSpline = (engine == null) ? new CubicSpline(x, y, 0.00001)
+                                                   : new CubicSpline(x, y, 0.00001, engine, new SplineWorkspace());
+        AlsoCubicSpline alsoCubicSpline = (engine == null) ? new AlsoCubicSpline(x, y, 0.00001)
+                                                           : new AlsoCubicSpline(x, y, 0.00001, engine,
+                                                                                 new SplineWorkspace());
+        SegmentLocator locator = new SegmentLocator(x); // the classes' own segment search, knots may be out of order
+        for (int i = 0; i < x.length - 1; ++i) {
+            for (int k = 0; k <= 4; ++k) {
+                double at = x[i] + (x[i + 1] - x[i]) * k / 4;
+                if (snapsToEnd(at)) continue;
+                int segment = locator.locate(at);
+                double expected = value(local, segment, at - x[segment]);
+                double fromCubicSpline = cubicSpline.interpolateY(at);
+                double fromAlsoCubicSpline = alsoCubicSpline.calculateY(at);
+                check(fromCubicSpline == expected, label + " CubicSpline at " + at + " " + fromCubicSpline
+                                                   + " expected " + expected);
+                check(fromAlsoCubicSpline == expected, label + " AlsoCubicSpline at " + at + " "
+                                                       + fromAlsoCubicSpline + " expected " + expected);
+            }
+        }
+
+        // refitting in place must keep the engine the spline was constructed with
+        alsoCubicSpline.alsocalculatesCoefficients();
+        for (int i = 0; i < x.length - 1; ++i) {
+            for (int k = 0; k <= 4; ++k) {
+                double at = x[i] + (x[i + 1] - x[i]) * k / 4;
+                int segment = locator.locate(at);
+                double expected = value(local, segment, at - x[segment]);
+                double refitted = alsoCubicSpline.calculateY(at);
+                check(refitted == expected, label + " refitted AlsoCubicSpline at " + at + " " + refitted
+                                            + " expected " + expected);
+            }
+        }
+    }
+
+    // an update, an insert and a removal in place against the same points fitted from scratch
+    private static void checkEdits(String name, double[] x, double[] y) {
+        if (x.length < 3) return;
+        CubicSpline edited = new CubicSpline(x, y, 0.00001);
+        double[] editedX = x.clone();
+        double[] editedY = y.clone();
+        int middle = x.length / 2;
+        editedY[middle] = y[middle] * 0.99;
+        edited.updatePoint(middle, x[middle], editedY[middle]);
+
+        double insertedX = (x[0] + x[1]) / 2;
+        double insertedY = (y[0] + y[1]) / 2;
+        edited.insertPoint(1, insertedX, insertedY);
+        edited.removePoint(1);
+        edited.insertPoint(1, insertedX, insertedY);
+        double[] finalX = new double[x.length + 1];
+        double[] finalY = new double[x.length + 1];
+        finalX[0] = editedX[0];
+        finalY[0] = editedY[0];
+        finalX[1] = insertedX;
+        finalY[1] = insertedY;
+        System.arraycopy(editedX, 1, finalX, 2, x.length - 1);
+        System.arraycopy(editedY, 1, finalY, 2, x.length - 1);
+
+        CubicSpline fresh = new CubicSpline(finalX, finalY, 0.00001);
+        for (int k = 0; k <= 64; ++k) {
+            double at = finalX[0] + (finalX[finalX.length - 1] - finalX[0]) * k / 64;
+            if (snapsToEnd(at)) continue;
+            check(edited.interpolateY(at) == fresh.interpolateY(at),
+                  name + " edited CubicSpline at " + at + " " + edited.interpolateY(at) + " refitted "
+                  + fresh.interpolateY(at));
+        }
+    }
+
+    /*
+     * TASKS tasks released together on a pool of at least four threads each run sample() on the same shared splines,
+     * visiting the points from a different starting place, and must match the serial reference exactly.
+     */
+    private static void checkConcurrentSharing(String name, double[] x, double[] y) throws InterruptedException {
+        CubicSplineInterpolator interpolator = new CubicSplineInterpolator(x, y, 0.00001);
+        AlsoCubicSpline alsoCubicSpline = new AlsoCubicSpline(x, y, 0.00001);
+        CubicSpline cubicSpline = new CubicSpline(x, y, 0.00001);
+        double[] points = new double[SAMPLES];
+        for (int k = 0; k < SAMPLES; ++k) points[k] = (k + 0.5) / SAMPLES;
+        double[][] coefficientsBefore = interpolator.coefficientMatrix().clone();
+        for (int k = 0; k < coefficientsBefore.length; ++k) coefficientsBefore[k] = coefficientsBefore[k].clone();
+        double[] reference = sample(interpolator, alsoCubicSpline, cubicSpline, points, 0);
+
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<double[]>> results = new ArrayList<>();
+        try {
+            for (int task = 0; task < TASKS; ++task) {
+                int offset = (task * 97) % SAMPLES;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return sample(interpolator, alsoCubicSpline, cubicSpline, points, offset);
+                }));
+            }
+            start.countDown();
+            for (int task = 0; task < TASKS; ++task) {
+                double[] result;
+                try {
+                    result = results.get(task).get();
+                } catch (ExecutionException e) {
+                    check(false, name + " task " + task + " threw " + e.getCause());
+                    continue;
+                }
+                int mismatch = -1;
+                for (int k = 0; (k < reference.length) && (mismatch < 0); ++k) {
+                    if (Double.doubleToLongBits(result[k]) != Double.doubleToLongBits(reference[k])) mismatch = k;
+                }
+                check(mismatch < 0, name + " task " + task + " differs from the serial run at value " + mismatch);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        check(Arrays.deepEquals(coefficientsBefore, interpolator.coefficientMatrix()),
+              name + " shared interpolator was changed while in use");
+    }
+
+    /*
+     * Every query the solvers make of the shared splines, plus point edits of the shared interpolator and queries of
+     * the edited copies. Results are stored by point, whatever order they were computed in; NaN where a query
+     * throws.
+     */
+    private static double[] sample(CubicSplineInterpolator interpolator, AlsoCubicSpline alsoCubicSpline,
+                                   CubicSpline cubicSpline, double[] points, int offset) {
+        int n = interpolator.getNumberOfPoints();
+        int middle = n / 2;
+        double[] x = interpolator.xValues();
+        double[] y = interpolator.yValues();
+        CubicSplineInterpolator[] edits = {
+            interpolator.withUpdatedPoint(middle, x[middle], y[middle] * 0.99),
+            interpolator.withInsertedPoint(1, (x[0] + x[1]) / 2, (y[0] + y[1]) / 2),
+            interpolator.withRemovedPoint(middle)
+        };
+
+        int queries = 6 + 2 * edits.length;
+        double[] results = new double[queries * SAMPLES];
+        for (int j = 0; j < SAMPLES; ++j) {
+            int k = (j + offset) % SAMPLES;
+            double p = points[k];
+            results[k] = interpolator.interpolateY(p);
+            results[SAMPLES + k] = inverse(interpolator, p);
+            results[2 * SAMPLES + k] = alsoCubicSpline.calculateY(p);
+            results[3 * SAMPLES + k] = cubicSpline.interpolateY(p);
+            for (int e = 0; e < edits.length; ++e) {
+                results[(6 + 2 * e) * SAMPLES + k] = edits[e].interpolateY(p);
+                results[(7 + 2 * e) * SAMPLES + k] = inverse(edits[e], p);
+            }
+        }
+
+        // a cursor walking down the curve as tray stepping does, and the batch form
+        SegmentLocator.Cursor cursor = interpolator.yCursor();
+        for (int k = SAMPLES - 1; k >= 0; --k) {
+            try {
+                results[4 * SAMPLES + k] = interpolator.interpolateX(points[k], cursor);
+            } catch (IllegalArgumentException e) {
+                results[4 * SAMPLES + k] = Double.NaN;
+            }
+        }
+        double[] batch = new double[SAMPLES];
+        interpolator.interpolateY(points, batch);
+        System.arraycopy(batch, 0, results, 5 * SAMPLES, SAMPLES);
+        return results;
+    }
+
+    private static double inverse(CubicSplineInterpolator interpolator, double y) {
+        try {
+            return interpolator.interpolateX(y);
+        } catch (IllegalArgumentException e) {
+            return Double.NaN;
+        }
+    }
+
+    // CubicSpline moves points within its epsilon of 0 or 1 onto the end, and nothing is defined outside [0, 1]
+    private static boolean snapsToEnd(double x) {
+        return !((x == 0) || (x == 1) || ((x >= 1e-4) && (x <= 1 - 1e-4)));
+    }
+
+    private static double value(double[][] local, int i, double dx) {
+        return ((local[A][i] * dx + local[B][i]) * dx + local[C][i]) * dx + local[D][i];
+    }
+
+    private static double slope(double[][] local, int i, double dx) {
+        return (3 * local[A][i] * dx + 2 * local[B][i]) * dx + local[C][i];
+    }
+
+    private static double curvature(double[][] local, int i, double dx) {
+        return 6 * local[A][i] * dx + 2 * local[B][i];
+    }
+
+    /*
+     * CubicSplineInterpolator's constrained spline fit as it was before SplineEngine, in the global form
+     * a + b x + c x^2 + d x^3 per segment. The reference for the coefficient check, not used by the solvers.
+     */
+    static double[][] legacyCoefficients(double[] X, double[] Y) {
+        double[][] coefficientMatrix = new double[4][X.length - 1];
+        double firstDerivativeXi = 0;
+        for (int i = 1; i <= coefficientMatrix[A].length; ++i) {
+            double firstDerivativeXiMinusOne;
+            if (i == X.length - 1) {
+                firstDerivativeXi = 3 * (Y[i] - Y[i - 1]) / (2 * (X[i] - X[i - 1])) - (firstDerivativeXi / 2);
+            } else {
+                firstDerivativeXi = 2 / (((X[i + 1] - X[i]) / (Y[i + 1] - Y[i]))
+                                         + ((X[i] - X[i - 1]) / (Y[i] - Y[i - 1])));
+            }
+            if (i == 1) {
+                firstDerivativeXiMinusOne = 3 * (Y[i] - Y[i - 1]) / (2 * (X[i] - X[i - 1]))
+                                            - (firstDerivativeXi / 2);
+            } else {
+                firstDerivativeXiMinusOne = 2 / (((X[i] - X[i - 1]) / (Y[i] - Y[i - 1]))
+                                                 + ((X[i - 1] - X[i - 2]) / (Y[i - 1] - Y[i - 2])));
+            }
+            double secondDerivativeXiMinusOne = (-2 * (firstDerivativeXi + 2 * firstDerivativeXiMinusOne)
+                                                 / (X[i] - X[i - 1]))
+                                                + (6 * (Y[i] - Y[i - 1])) / Math.pow(X[i] - X[i - 1], 2);
+            double secondDerivativeXi = (2 * (2 * firstDerivativeXi + firstDerivativeXiMinusOne) / (X[i] - X[i - 1]))
+                                        - (6 * (Y[i] - Y[i - 1])) / Math.pow(X[i] - X[i - 1], 2);
+
+            double d = (secondDerivativeXi - secondDerivativeXiMinusOne) / (6 * (X[i] - X[i - 1]));
+            double c = (X[i] * secondDerivativeXiMinusOne - X[i - 1] * secondDerivativeXi) / (2 * (X[i] - X[i - 1]));
+            double b = ((Y[i] - Y[i - 1])
+                        - c * (Math.pow(X[i], 2) - Math.pow(X[i - 1], 2))
+                        - d * (Math.pow(X[i], 3) - Math.pow(X[i - 1], 3)))
+                       / (X[i] - X[i - 1]);
+            double a = Y[i - 1] - b * X[i - 1] - c * Math.pow(X[i - 1], 2) - d * Math.pow(X[i - 1], 3);
+
+            coefficientMatrix[A][i - 1] = a;
+            coefficientMatrix[B][i - 1] = b;
+            coefficientMatrix[C][i - 1] = c;
+            coefficientMatrix[D][i - 1] = d;
+        }
+        return coefficientMatrix;
+    }
+
+    private static void checkClose(double actual, double expected, String what) {
+        check(Math.abs(actual - expected) <= TOLERANCE * (1 + Math.abs(expected)),
+              what + " is " + actual + ", expected " + expected);
+    }
+
+    private static void check(boolean passed, String what) {
+        checks++;
+        if (!passed) {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+    }
+}
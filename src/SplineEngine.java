@@ -0,0 +1,132 @@
+/*
+ * Fits a cubic spline through a set of points by finding the first derivative (slope) at every knot; the cubic on
+ * each segment then follows from its end values and end slopes (Hermite form). The engines differ only in how the
+ * slopes are chosen:
+ *
+ *   NATURAL      second derivative zero at both ends, one tridiagonal solve
+ *   CLAMPED      given slopes at both ends, one tridiagonal solve
+ *   NOT_A_KNOT   third derivative continuous at the second and second to last knots, one tridiagonal solve
+ *   MONOTONE     the constrained spline of Kruger, slopes from neighbouring secants with no solve; it never
+ *                overshoots the data, which is what CubicSplineInterpolator relies on
+ *
+ * The fit methods take the number of points to use so callers can keep spare capacity at the end of their arrays,
+ * and write into arrays the caller owns. With a reused SplineWorkspace a refit allocates nothing.
+ */
+public interface SplineEngine {
+
+    enum BoundaryCondition {
+        NATURAL,
+        CLAMPED,
+        NOT_A_KNOT,
+        MONOTONE
+    }
+
+    // coefficient rows, shared by both layouts below
+    int A = 0;
+    int B = 1;
+    int C = 2;
+    int D = 3;
+
+    BoundaryCondition getBoundaryCondition();
+
+    // slopes[0 .. count) receives the first derivative of the spline at each knot
+    void fitSlopes(double[] x, double[] y, int count, double[] slopes, SplineWorkspace workspace)
+                   throws IllegalArgumentException;
+
+    /*
+     * Fits the spline and writes each segment i as A (x - x[i])^3 + B (x - x[i])^2 + C (x - x[i]) + D, the layout
+     * used by CubicSpline and AlsoCubicSpline. coefficients is 4 x (at least count - 1).
+     */
+    default void fitLocal(double[] x, double[] y, int count, double[][] coefficients, SplineWorkspace workspace)
+                          throws IllegalArgumentException {
+        workspace.ensureCapacity(count);
+        fitSlopes(x, y, count, workspace.slopes, workspace);
+        localCoefficients(x, y, count, workspace.slopes, coefficients);
+    }
+
+    /*
+     * Fits the spline and writes each segment i as A + B x + C x^2 + D x^3, the layout used by
+     * CubicSplineInterpolator. coefficients is 4 x (at least count - 1).
+     */
+    default void fitGlobal(double[] x, double[] y, int count, double[][] coefficients, SplineWorkspace workspace)
+                           throws IllegalArgumentException {
+        workspace.ensureCapacity(count);
+        fitSlopes(x, y, count, workspace.slopes, workspace);
+        globalCoefficients(x, y, count, workspace.slopes, coefficients);
+    }
+
+    static SplineEngine natural() {
+        return TridiagonalSplineEngine.NATURAL;
+    }
+
+    static SplineEngine notAKnot() {
+        return TridiagonalSplineEngine.NOT_A_KNOT;
+    }
+
+    static SplineEngine clamped(double startSlope, double endSlope) {
+        return new TridiagonalSplineEngine(BoundaryCondition.CLAMPED, startSlope, endSlope);
+    }
+
+    static SplineEngine monotone() {
+        return MonotoneSplineEngine.INSTANCE;
+    }
+
+    // CLAMPED needs its end slopes, use clamped(startSlope, endSlope) for it
+    static SplineEngine of(BoundaryCondition boundaryCondition) throws IllegalArgumentException {
+        switch (boundaryCondition) {
+            case NATURAL:    return natural();
+            case NOT_A_KNOT: return notAKnot();
+            case MONOTONE:   return monotone();
+            default:         throw new IllegalArgumentException(boundaryCondition + " splines need end slopes");
+        }
+    }
+
+    static void localCoefficients(double[] x, double[] y, int count, double[] slopes, double[][] coefficients) {
+        for (int i = 0; i < count - 1; ++i) {
+            double h = x[i + 1] - x[i];
+            double secant = (y[i + 1] - y[i]) / h;
+            coefficients[A][i] = (slopes[i] + slopes[i + 1] - 2 * secant) / (h * h);
+            coefficients[B][i] = (3 * secant - 2 * slopes[i] - slopes[i + 1]) / h;
+            coefficients[C][i] = slopes[i];
+            coefficients[D][i] = y[i];
+        }
+    }
+
+    static void globalCoefficients(double[] x, double[] y, int count, double[] slopes, double[][] coefficients) {
+        for (int i = 0; i < count - 1; ++i) {
+            globalSegment(x, y, i, slopes[i], slopes[i + 1], coefficients);
+        }
+    }
+
+    /*
+     * Global coefficients of one segment from the slopes at its ends. Goes through the second derivatives at the
+     * segment ends, exactly as CubicSplineInterpolator always has.
+     */
+    static void globalSegment(double[] x, double[] y, int segment, double startSlope, double endSlope,
+                              double[][] coefficients) {
+        int i = segment + 1;
+        double h = x[i] - x[i - 1];
+        double secondDerivativeXiMinusOne = (-2 * (endSlope + 2 * startSlope) / h)
+                                          + (6 * (y[i] - y[i - 1])) / Math.pow(h, 2);
+        double secondDerivativeXi = (2 * (2 * endSlope + startSlope) / h)
+                                  - (6 * (y[i] - y[i - 1])) / Math.pow(h, 2);
+
+        double d = (secondDerivativeXi - secondDerivativeXiMinusOne) / (6 * h);
+        double c = (x[i] * secondDerivativeXiMinusOne - x[i - 1] * secondDerivativeXi) / (2 * h);
+        double b = ((y[i] - y[i - 1])
+                    - c * (Math.pow(x[i], 2) - Math.pow(x[i - 1], 2))
+                    - d * (Math.pow(x[i], 3) - Math.pow(x[i - 1], 3)))
+                   / h;
+        double a = y[i - 1] - b * x[i - 1] - c * Math.pow(x[i - 1], 2) - d * Math.pow(x[i - 1], 3);
+
+        coefficients[A][segment] = a;
+        coefficients[B][segment] = b;
+        coefficients[C][segment] = c;
+        coefficients[D][segment] = d;
+    }
+
+    static void checkPoints(double[] x, double[] y, int count) throws IllegalArgumentException {
+        if ((x == null) || (y == null) || (count < 2) || (count > x.length) || (count > y.length))
+            throw new IllegalArgumentException("A spline needs at least two points");
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Scratch arrays for fitting splines with a SplineEngine. A workspace grows to the largest number of points it has
+ * been used for and is then reused, so refitting curves of the same size in a loop allocates nothing. A workspace
+ * is not thread safe; give each thread its own.
+ */
+public final class SplineWorkspace {
+
+    double[] lower;         // sub-diagonal, lower[i] multiplies unknown i - 1 in row i
+    double[] diagonal;
+    double[] upper;         // super-diagonal, upper[i] multiplies unknown i + 1 in row i
+    double[] rhs;
+    double[] slopes;        // knot slopes handed from SplineEngine.fitSlopes to the coefficient conversions
+
+    public SplineWorkspace() {
+        this(16);
+    }
+
+    public SplineWorkspace(int capacity) throws IllegalArgumentException {
+        if (capacity < 2) throw new IllegalArgumentException("A spline workspace needs room for at least two points");
+        allocate(capacity);
+    }
+
+    public int getCapacity() {
+        return this.diagonal.length;
+    }
+
+    void ensureCapacity(int points) {
+        if (points > this.diagonal.length) allocate(Math.max(points, 2 * this.diagonal.length));
+    }
+
+    private void allocate(int capacity) {
+        this.lower = new double[capacity];
+        this.diagonal = new double[capacity];
+        this.upper = new double[capacity];
+        this.rhs = new double[capacity];
+        this.slopes = new double[capacity];
+    }
+
+    /*
+     * Thomas algorithm on the first n rows of lower, diagonal, upper and rhs. The rows are overwritten and the
+     * solution is written to solution[0 .. n). Spline systems on increasing knots are solved without pivoting.
+     */
+    void solveTridiagonal(int n, double[] solution) {
+        for (int i = 1; i < n; ++i) {
+            double factor = this.lower[i] / this.diagonal[i - 1];
+            this.diagonal[i] -= factor * this.upper[i - 1];
+            this.rhs[i] -= factor * this.rhs[i - 1];
+        }
+        solution[n - 1] = this.rhs[n - 1] / this.diagonal[n - 1];
+        for (int i = n - 2; i >= 0; --i) {
+            solution[i] = (this.rhs[i] - this.upper[i] * solution[i + 1]) / this.diagonal[i];
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/*
+ * Receives the McCabe-Thiele staircase one equilibrium stage at a time as the column is stepped, so callers can
+ * count, stream or keep the stages without the column building a list. Stage numbers start at 1 at the top of the
+ * column. x is the liquid leaving the stage, y the vapour in equilibrium with it and yBelow the vapour rising from
+ * the stage underneath, read off the operating line. These are the two corners of the stage's step.
+ */
+@FunctionalInterface
+public interface StageConsumer {
+
+    StageConsumer DISCARD = (stage, x, y, yBelow) -> { };
+
+    void accept(int stage, double x, double y, double yBelow);
+
+    default StageConsumer andThen(StageConsumer next) {
+        if (next == null) return this;
+        return (stage, x, y, yBelow) -> {
+            accept(stage, x, y, yBelow);
+            next.accept(stage, x, y, yBelow);
+        };
+    }
+}
@@ -0,0 +1,106 @@
+import java.util.Arrays;
+
+/*
+ * Estimates one quantile of a stream of numbers in constant memory with the P-square algorithm (R. Jain and
+ * I. Chlamtac, "The P2 Algorithm for Dynamic Calculation of Quantiles and Histograms Without Storing
+ * Observations", 1985). Five markers track the minimum, the maximum, the quantile and two points either side of
+ * it; each new value moves the markers towards their ideal positions with a piecewise parabolic correction. Until
+ * five values have been seen the quantile is exact. The estimate depends on the order the values arrive in. An
+ * estimator is not thread safe.
+ */
+public final class StreamingQuantile {
+
+    private final double probability;
+    private final double[] heights = new double[5];     // marker values
+    private final int[] positions = new int[5];         // marker positions, 1 based
+    private final double[] desired = new double[5];     // ideal marker positions
+    private final double[] increments = new double[5];  // how far the ideal positions move per value
+    private long count;
+
+    public StreamingQuantile(double probability) throws IllegalArgumentException {
+        if (!(probability > 0) || !(probability < 1))
+            throw new IllegalArgumentException("Quantile probability must be between 0 and 1, got " + probability);
+        this.probability = probability;
+        this.increments[0] = 0;
+        this.increments[1] = probability / 2;
+        this.increments[2] = probability;
+        this.increments[3] = (1 + probability) / 2;
+        this.increments[4] = 1;
+    }
+
+    public double getProbability() {
+        return this.probability;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    // NaN values are ignored
+    public void add(double value) {
+        if (Double.isNaN(value)) return;
+        if (this.count < 5) {
+            this.heights[(int) this.count++] = value;
+            if (this.count == 5) {
+                Arrays.sort(this.heights);
+                for (int i = 0; i < 5; ++i) {
+                    this.positions[i] = i + 1;
+                    this.desired[i] = 1 + 4 * this.increments[i];
+                }
+            }
+            return;
+        }
+        this.count++;
+
+        int cell;
+        if (value < this.heights[0]) {
+            this.heights[0] = value;
+            cell = 0;
+        } else if (value >= this.heights[4]) {
+            this.heights[4] = value;
+            cell = 3;
+        } else {
+            cell = 0;
+            while (value >= this.heights[cell + 1]) cell++;
+        }
+        for (int i = cell + 1; i < 5; ++i) this.positions[i]++;
+        for (int i = 0; i < 5; ++i) this.desired[i] += this.increments[i];
+
+        for (int i = 1; i < 4; ++i) {
+            double offset = this.desired[i] - this.positions[i];
+            if (((offset >= 1) && (this.positions[i + 1] - this.positions[i] > 1))
+            ||  ((offset <= -1) && (this.positions[i - 1] - this.positions[i] < -1))) {
+                int step = (offset > 0) ? 1 : -1;
+                double height = parabolic(i, step);
+                if ((height <= this.heights[i - 1]) || (height >= this.heights[i + 1])) height = linear(i, step);
+                this.heights[i] = height;
+                this.positions[i] += step;
+            }
+        }
+    }
+
+    private double parabolic(int i, int step) {
+        double below = this.positions[i] - this.positions[i - 1];
+        double above = this.positions[i + 1] - this.positions[i];
+        double span = this.positions[i + 1] - this.positions[i - 1];
+        return this.heights[i]
+               + step / span * ((below + step) * (this.heights[i + 1] - this.heights[i]) / above
+                                + (above - step) * (this.heights[i] - this.heights[i - 1]) / below);
+    }
+
+    private double linear(int i, int step) {
+        return this.heights[i] + step * (this.heights[i + step] - this.heights[i])
+                                 / (this.positions[i + step] - this.positions[i]);
+    }
+
+    // the current estimate, NaN before any value has been added
+    public double getQuantile() {
+        if (this.count == 0) return Double.NaN;
+        if (this.count < 5) {
+            double[] sorted = Arrays.copyOf(this.heights, (int) this.count);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(this.count - 1, Math.round(this.probability * (this.count - 1)))];
+        }
+        return this.heights[2];
+    }
+}
@@ -0,0 +1,239 @@
+import java.util.Arrays;
+
+/*
+ * CubicSplineInterpolator that answers interpolateY and interpolateX from tables of the exact curve sampled on a
+ * uniform grid of gridSize cells over [0,1], so an evaluation is one multiplication, one index and one linear
+ * interpolation. Everything else (intersections, tangents, derivatives) is inherited and stays exact.
+ *
+ * The error against the exact spline is certified cell by cell. Linear interpolation of a curve with a continuous
+ * first derivative is out by at most h^2 / 8 * max|y''| on a cell of width h; for the inverse x(y) the second
+ * derivative is y'' / y'^3, and the error can never exceed the change in x across the cell. The spline is only C1,
+ * so quadratic interpolation would not have a better bound across the knots and is not offered. Cells where no
+ * bound holds (the data doubles back in x, or the curve is flat so the inverse is not unique) are answered by the
+ * exact spline instead, so the bound covers every answer. Point edits (withUpdatedPoint and so on) return exact
+ * interpolators.
+ */
+public class TabulatedSplineInterpolator extends CubicSplineInterpolator {
+
+    private static final int MAXIMUM_GRID_SIZE = 1 << 24;
+
+    private final int gridSize;
+    private final double[] yTable;          // y at x = k / gridSize
+    private final double[] xTable;          // x at y = k / gridSize
+    private final boolean[] exactX;         // cells of the forward table answered by the exact spline
+    private final boolean[] exactY;         // cells of the inverse table answered by the exact spline
+    private final double forwardErrorBound;
+    private final double inverseErrorBound;
+
+    public TabulatedSplineInterpolator(CubicSplineInterpolator exact, int gridSize) throws IllegalArgumentException {
+        super(exact.xValues(), exact.yValues(), exact.getEpsilon(), exact.coefficientMatrix());
+        if ((gridSize < 1) || (gridSize > MAXIMUM_GRID_SIZE))
+            throw new IllegalArgumentException("Grid size must be between 1 and " + MAXIMUM_GRID_SIZE);
+        this.gridSize = gridSize;
+        double h = 1.0 / gridSize;
+
+        this.yTable = new double[gridSize + 1];
+        SegmentLocator.Cursor xCursor = xCursor();
+        for (int k = 0; k <= gridSize; ++k) this.yTable[k] = super.interpolateY(k * h, xCursor);
+        this.xTable = new double[gridSize + 1];
+        SegmentLocator.Cursor yCursor = yCursor();
+        for (int k = 0; k <= gridSize; ++k) this.xTable[k] = super.interpolateX(k * h, yCursor);
+
+        CellBounds cells = new CellBounds(gridSize);
+        this.exactX = new boolean[gridSize];
+        double forward = 0;
+        for (int k = 0; k < gridSize; ++k) {
+            this.exactX[k] = cells.irregular[k];
+            if (!this.exactX[k]) forward = Math.max(forward, h * h / 8 * cells.curvature[k]);
+        }
+        this.forwardErrorBound = forward;
+
+        this.exactY = new boolean[gridSize];
+        double inverse = 0;
+        for (int k = 0; k < gridSize; ++k) {
+            double bound = inverseCellBound(cells, h, this.xTable[k], this.xTable[k + 1]);
+            this.exactY[k] = Double.isNaN(bound);
+            if (!this.exactY[k]) inverse = Math.max(inverse, bound);
+        }
+        this.inverseErrorBound = inverse;
+    }
+
+    // smallest power of two grid whose certified error is at most maximumError in both directions
+    public static TabulatedSplineInterpolator forMaximumError(CubicSplineInterpolator exact, double maximumError)
+                                                             throws IllegalArgumentException {
+        if (!(maximumError > 0)) throw new IllegalArgumentException("The target error must be positive");
+        int gridSize = 64;
+        TabulatedSplineInterpolator table = new TabulatedSplineInterpolator(exact, gridSize);
+        while (table.getMaximumError() > maximumError) {
+            // the bounds shrink with h^2, so jump straight to about the right size
+            double ratio = Math.sqrt(table.getMaximumError() / maximumError);
+            int next = Integer.highestOneBit((int) Math.min(MAXIMUM_GRID_SIZE, Math.ceil(gridSize * ratio))) << 1;
+            next = Math.max(next, 2 * gridSize);
+            if (next > MAXIMUM_GRID_SIZE)
+                throw new IllegalArgumentException("No grid of up to " + MAXIMUM_GRID_SIZE + " cells reaches an error of "
+                                                   + maximumError);
+            gridSize = next;
+            table = new TabulatedSplineInterpolator(exact, gridSize);
+        }
+        return table;
+    }
+
+    public int getGridSize() {
+        return this.gridSize;
+    }
+
+    public double getForwardErrorBound() {
+        return this.forwardErrorBound;
+    }
+
+    public double getInverseErrorBound() {
+        return this.inverseErrorBound;
+    }
+
+    public double getMaximumError() {
+        return Math.max(this.forwardErrorBound, this.inverseErrorBound);
+    }
+
+    public double interpolateY(double x) throws IllegalArgumentException {
+        x = clampToUnitRange(x, "X");
+        int k = cell(x);
+        if (this.exactX[k]) return super.interpolateY(x);
+        SolverMetrics.SPLINE_EVALUATIONS.increment();
+        return lookUp(this.yTable, k, x);
+    }
+
+    public double interpolateY(double x, SegmentLocator.Cursor cursor) throws IllegalArgumentException {
+        x = clampToUnitRange(x, "X");
+        int k = cell(x);
+        if (this.exactX[k]) return super.interpolateY(x, cursor);
+        SolverMetrics.SPLINE_EVALUATIONS.increment();
+        return lookUp(this.yTable, k, x);
+    }
+
+    public double interpolateX(double y) throws IllegalArgumentException {
+        y = clampToUnitRange(y, "Y");
+        int k = cell(y);
+        if (this.exactY[k]) return super.interpolateX(y);
+        SolverMetrics.SPLINE_EVALUATIONS.increment();
+        return lookUp(this.xTable, k, y);
+    }
+
+    public double interpolateX(double y, SegmentLocator.Cursor cursor) throws IllegalArgumentException {
+        y = clampToUnitRange(y, "Y");
+        int k = cell(y);
+        if (this.exactY[k]) return super.interpolateX(y, cursor);
+        SolverMetrics.SPLINE_EVALUATIONS.increment();
+        return lookUp(this.xTable, k, y);
+    }
+
+    public void interpolateY(double[] xs, double[] out) throws IllegalArgumentException {
+        if ((xs == null) || (out == null) || (out.length < xs.length))
+            throw new IllegalArgumentException("Output array must be at least as long as the input array");
+        SegmentLocator.Cursor cursor = xCursor();
+        for (int k = 0; k < xs.length; ++k) out[k] = interpolateY(xs[k], cursor);
+    }
+
+    public void interpolateX(double[] ys, double[] out) throws IllegalArgumentException {
+        if ((ys == null) || (out == null) || (out.length < ys.length))
+            throw new IllegalArgumentException("Output array must be at least as long as the input array");
+        SegmentLocator.Cursor cursor = yCursor();
+        for (int k = 0; k < ys.length; ++k) out[k] = interpolateX(ys[k], cursor);
+    }
+
+    private int cell(double value) {
+        return Math.min((int) (value * this.gridSize), this.gridSize - 1);
+    }
+
+    private double lookUp(double[] table, int k, double value) {
+        double t = value * this.gridSize - k;
+        return table[k] + t * (table[k + 1] - table[k]);
+    }
+
+    /*
+     * Bound for the inverse cell whose ends map to x0 and x1, or NaN if the forward cells between them are
+     * irregular or the curve is flat somewhere in them.
+     */
+    private double inverseCellBound(CellBounds cells, double h, double x0, double x1) {
+        int first = cellOf(Math.min(x0, x1), cells.curvature.length);
+        int last = cellOf(Math.max(x0, x1), cells.curvature.length);
+        double curvature = 0;
+        double slope = Double.POSITIVE_INFINITY;
+        for (int k = first; k <= last; ++k) {
+            if (cells.irregular[k] || !(cells.minimumSlope[k] > 0)) return Double.NaN;
+            curvature = Math.max(curvature, cells.curvature[k]);
+            slope = Math.min(slope, cells.minimumSlope[k]);
+        }
+        return Math.min(h * h / 8 * curvature / (slope * slope * slope), Math.abs(x1 - x0));
+    }
+
+    private static int cellOf(double x, int gridSize) {
+        return Math.max(0, Math.min((int) (x * gridSize), gridSize - 1));
+    }
+
+    /*
+     * Per forward cell: the largest |y''| and smallest |y'| of every segment overlapping it, and whether the cell is
+     * irregular, i.e. not covered by a run of consecutive segments that all go forward in x.
+     */
+    private final class CellBounds {
+        private final double[] curvature;
+        private final double[] minimumSlope;
+        private final boolean[] irregular;
+
+        private CellBounds(int gridSize) {
+            double h = 1.0 / gridSize;
+            this.curvature = new double[gridSize];
+            this.minimumSlope = new double[gridSize];
+            this.irregular = new boolean[gridSize];
+            int[] firstSegment = new int[gridSize];
+            int[] lastSegment = new int[gridSize];
+            int[] segmentCount = new int[gridSize];
+            Arrays.fill(this.minimumSlope, Double.POSITIVE_INFINITY);
+            Arrays.fill(firstSegment, Integer.MAX_VALUE);
+            Arrays.fill(lastSegment, -1);
+
+            double[] x = xValues();
+            double[][] coefficients = coefficientMatrix();
+            for (int i = 0; i < x.length - 1; ++i) {
+                double lo = Math.max(0, Math.min(x[i], x[i + 1]));
+                double hi = Math.min(1, Math.max(x[i], x[i + 1]));
+                if (lo > hi) continue;
+                double b = coefficients[1][i];
+                double c = coefficients[2][i];
+                double d = coefficients[3][i];
+                for (int k = cellOf(lo, gridSize); k <= cellOf(hi, gridSize); ++k) {
+                    double from = Math.max(lo, k * h);
+                    double to = Math.min(hi, (k + 1) * h);
+                    if (from > to) continue;
+                    double curvature = Math.max(Math.abs(2 * c + 6 * d * from), Math.abs(2 * c + 6 * d * to));
+                    this.curvature[k] = Math.max(this.curvature[k], curvature);
+                    this.minimumSlope[k] = Math.min(this.minimumSlope[k], minimumAbsoluteSlope(b, c, d, from, to));
+                    if (x[i + 1] <= x[i]) this.irregular[k] = true;
+                    firstSegment[k] = Math.min(firstSegment[k], i);
+                    lastSegment[k] = Math.max(lastSegment[k], i);
+                    segmentCount[k]++;
+                }
+            }
+            for (int k = 0; k < gridSize; ++k) {
+                if ((segmentCount[k] == 0) || (lastSegment[k] - firstSegment[k] + 1 != segmentCount[k]))
+                    this.irregular[k] = true;
+            }
+        }
+
+        // smallest |b + 2 c x + 3 d x^2| on [from, to], zero if it changes sign there
+        private double minimumAbsoluteSlope(double b, double c, double d, double from, double to) {
+            double start = b + (2 * c + 3 * d * from) * from;
+            double end = b + (2 * c + 3 * d * to) * to;
+            double smallest = Math.min(Math.abs(start), Math.abs(end));
+            if ((start < 0) != (end < 0)) return 0;
+            if (d != 0) {
+                double vertex = -c / (3 * d);
+                if ((vertex > from) && (vertex < to)) {
+                    double atVertex = b + (2 * c + 3 * d * vertex) * vertex;
+                    if ((atVertex < 0) != (start < 0)) return 0;
+                    smallest = Math.min(smallest, Math.abs(atVertex));
+                }
+            }
+            return smallest;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Growable list of (x, y) points packed into one primitive array, x and y alternating, either on the heap or in a
+ * direct (off-heap) buffer. As a StageConsumer it stores both corners of every stage, (x, y) then (x, yBelow), in
+ * the same order as the old list of double[] points. A buffer is not thread safe.
+ */
+public final class TrajectoryBuffer implements StageConsumer {
+
+    private final boolean offHeap;
+    private double[] heap;
+    private DoubleBuffer direct;
+    private int size;           // number of points
+
+    public TrajectoryBuffer() {
+        this(64, false);
+    }
+
+    public TrajectoryBuffer(int initialCapacity, boolean offHeap) throws IllegalArgumentException {
+        if (initialCapacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+        this.offHeap = offHeap;
+        allocate(initialCapacity);
+    }
+
+    public TrajectoryBuffer(TrajectoryBuffer source) {
+        this(Math.max(1, source.size), source.offHeap);
+        if (this.offHeap) {
+            DoubleBuffer points = source.direct.duplicate();
+            points.position(0).limit(2 * source.size);
+            this.direct.put(points);
+        } else {
+            System.arraycopy(source.heap, 0, this.heap, 0, 2 * source.size);
+        }
+        this.size = source.size;
+    }
+
+    private void allocate(int capacity) {
+        if (this.offHeap) {
+            DoubleBuffer grown = ByteBuffer.allocateDirect(16 * capacity).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+            if (this.direct != null) {
+                DoubleBuffer old = this.direct.duplicate();
+                old.position(0).limit(2 * this.size);
+                grown.put(old);
+            }
+            this.direct = grown;
+        } else {
+            double[] grown = new double[2 * capacity];
+            if (this.heap != null) System.arraycopy(this.heap, 0, grown, 0, 2 * this.size);
+            this.heap = grown;
+        }
+    }
+
+    private int capacity() {
+        return this.offHeap ? this.direct.capacity() / 2 : this.heap.length / 2;
+    }
+
+    public void add(double x, double y) {
+        if (this.size == capacity()) allocate(2 * this.size);
+        if (this.offHeap) {
+            this.direct.put(2 * this.size, x);
+            this.direct.put(2 * this.size + 1, y);
+        } else {
+            this.heap[2 * this.size] = x;
+            this.heap[2 * this.size + 1] = y;
+        }
+        this.size++;
+    }
+
+    public void accept(int stage, double x, double y, double yBelow) {
+        add(x, y);
+        add(x, yBelow);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isOffHeap() {
+        return this.offHeap;
+    }
+
+    public double getX(int index) throws IndexOutOfBoundsException {
+        checkIndex(index);
+        return this.offHeap ? this.direct.get(2 * index) : this.heap[2 * index];
+    }
+
+    public double getY(int index) throws IndexOutOfBoundsException {
+        checkIndex(index);
+        return this.offHeap ? this.direct.get(2 * index + 1) : this.heap[2 * index + 1];
+    }
+
+    private void checkIndex(int index) throws IndexOutOfBoundsException {
+        if ((index < 0) || (index >= this.size))
+            throw new IndexOutOfBoundsException("Point " + index + " of " + this.size);
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    // the points as separate {x, y} arrays, for callers of the older list based methods
+    public List<double[]> toList() {
+        List<double[]> points = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; ++i) points.add(new double[]{getX(i), getY(i)});
+        return points;
+    }
+
+    public TrajectoryBuffer copy() {
+        return new TrajectoryBuffer(this);
+    }
+}
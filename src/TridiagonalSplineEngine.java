@@ -0,0 +1,107 @@
+/*
+ * C2 cubic spline: the knot slopes solve the tridiagonal system that makes the second derivative continuous,
+ *
+ *   h[i] m[i - 1] + 2 (h[i - 1] + h[i]) m[i] + h[i - 1] m[i + 1] = 3 (h[i] s[i - 1] + h[i - 1] s[i])
+ *
+ * for the interior knots, where h[i] is the width and s[i] the secant slope of segment i. The first and last rows
+ * come from the boundary condition. Two points always give the straight line (or the clamped cubic), and three
+ * points with NOT_A_KNOT give the parabola through them.
+ */
+final class TridiagonalSplineEngine implements SplineEngine {
+
+    static final TridiagonalSplineEngine NATURAL = new TridiagonalSplineEngine(BoundaryCondition.NATURAL, 0, 0);
+    static final TridiagonalSplineEngine NOT_A_KNOT = new TridiagonalSplineEngine(BoundaryCondition.NOT_A_KNOT, 0, 0);
+
+    private final BoundaryCondition boundaryCondition;
+    private final double startSlope;     // only used when clamped
+    private final double endSlope;
+
+    TridiagonalSplineEngine(BoundaryCondition boundaryCondition, double startSlope, double endSlope) {
+        this.boundaryCondition = boundaryCondition;
+        this.startSlope = startSlope;
+        this.endSlope = endSlope;
+    }
+
+    public BoundaryCondition getBoundaryCondition() {
+        return this.boundaryCondition;
+    }
+
+    public void fitSlopes(double[] x, double[] y, int count, double[] slopes, SplineWorkspace workspace)
+                          throws IllegalArgumentException {
+        SplineEngine.checkPoints(x, y, count);
+        workspace.ensureCapacity(count);
+        int last = count - 1;
+
+        if (this.boundaryCondition == BoundaryCondition.CLAMPED) {
+            slopes[0] = this.startSlope;
+            slopes[last] = this.endSlope;
+            if (count == 2) return;
+        } else if (count == 2) {
+            slopes[0] = slopes[1] = (y[1] - y[0]) / (x[1] - x[0]);
+            return;
+        } else if ((count == 3) && (this.boundaryCondition == BoundaryCondition.NOT_A_KNOT)) {
+            parabola(x, y, slopes);
+            return;
+        }
+
+        double[] lower = workspace.lower;
+        double[] diagonal = workspace.diagonal;
+        double[] upper = workspace.upper;
+        double[] rhs = workspace.rhs;
+
+        for (int i = 1; i < last; ++i) {
+            double hLeft = x[i] - x[i - 1];
+            double hRight = x[i + 1] - x[i];
+            lower[i] = hRight;
+            diagonal[i] = 2 * (hLeft + hRight);
+            upper[i] = hLeft;
+            rhs[i] = 3 * (hRight * (y[i] - y[i - 1]) / hLeft + hLeft * (y[i + 1] - y[i]) / hRight);
+        }
+
+        double hFirst = x[1] - x[0];
+        double hLast = x[last] - x[last - 1];
+        switch (this.boundaryCondition) {
+            case NATURAL:
+                diagonal[0] = 2;
+                upper[0] = 1;
+                rhs[0] = 3 * (y[1] - y[0]) / hFirst;
+                lower[last] = 1;
+                diagonal[last] = 2;
+                rhs[last] = 3 * (y[last] - y[last - 1]) / hLast;
+                break;
+            case CLAMPED:
+                diagonal[0] = 1;
+                upper[0] = 0;
+                rhs[0] = this.startSlope;
+                lower[last] = 0;
+                diagonal[last] = 1;
+                rhs[last] = this.endSlope;
+                break;
+            default: {  // NOT_A_KNOT
+                double hSecond = x[2] - x[1];
+                double span = x[2] - x[0];
+                diagonal[0] = hSecond;
+                upper[0] = span;
+                rhs[0] = ((hFirst + 2 * span) * hSecond * (y[1] - y[0]) / hFirst
+                          + hFirst * hFirst * (y[2] - y[1]) / hSecond) / span;
+                double hPenultimate = x[last - 1] - x[last - 2];
+                span = x[last] - x[last - 2];
+                lower[last] = span;
+                diagonal[last] = hPenultimate;
+                rhs[last] = (hLast * hLast * (y[last - 1] - y[last - 2]) / hPenultimate
+                             + (2 * span + hLast) * hPenultimate * (y[last] - y[last - 1]) / hLast) / span;
+            }
+        }
+        workspace.solveTridiagonal(count, slopes);
+    }
+
+    // slopes of the quadratic through three points, from its divided differences
+    private static void parabola(double[] x, double[] y, double[] slopes) {
+        double first = (y[1] - y[0]) / (x[1] - x[0]);
+        double second = (y[2] - y[1]) / (x[2] - x[1]);
+        double curvature = (second - first) / (x[2] - x[0]);
+        for (int i = 0; i < 3; ++i) {
+            slopes[i] = first + curvature * ((x[i] - x[0]) + (x[i] - x[1]));
+        }
+    }
+}
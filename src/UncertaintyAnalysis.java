@@ -0,0 +1,325 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/*
+ * Monte Carlo propagation of the error in a venture's equilibrium data through the column design. Every sample
+ * perturbs the measured points with a NoiseModel, fits a new CubicSplineInterpolator through them and solves the
+ * column with newDistColumn, so the spread of the stage count and reflux ratios shows how far the data can be
+ * trusted.
+ *
+ * Samples are run in chunks on a fork/join pool. Each worker thread keeps its own SplineWorkspace and scratch
+ * arrays, and each chunk its own SplittableRandom split off the seed in chunk order, so a run is repeatable for a
+ * given seed whatever the number of threads. Chunk results are folded into the statistics in chunk order as they
+ * complete and then dropped, with only a few chunks in flight, so memory does not grow with the number of
+ * samples: the stage count is an exact histogram, the reflux ratios go through StreamingQuantile estimators.
+ * Samples whose column cannot be solved, or solves with a reflux ratio that is not positive, are counted as
+ * failures and left out of the statistics.
+ */
+public class UncertaintyAnalysis {
+
+    private static final int CHUNK_SIZE = 256;
+
+    // perturbs copies of the measured points in place, the arrays hold the venture's data on entry
+    @FunctionalInterface
+    public interface NoiseModel {
+        void perturb(double[] x, double[] y, SplittableRandom random);
+
+        /*
+         * Independent normal errors with standard deviations sigmaX and sigmaY on every point except the pure
+         * component ends (0, 0) and (1, 1), which are exact; perturbed values are kept inside [0, 1].
+         */
+        static NoiseModel gaussian(double sigmaX, double sigmaY) throws IllegalArgumentException {
+            if ((sigmaX < 0) || (sigmaY < 0))
+                throw new IllegalArgumentException("Standard deviations must not be negative");
+            return (x, y, random) -> {
+                for (int i = 0; i < x.length; ++i) {
+                    if (((x[i] == 0) && (y[i] == 0)) || ((x[i] == 1) && (y[i] == 1))) continue;
+                    x[i] = Math.min(1, Math.max(0, x[i] + sigmaX * nextGaussian(random)));
+                    y[i] = Math.min(1, Math.max(0, y[i] + sigmaY * nextGaussian(random)));
+                }
+            };
+        }
+    }
+
+    private final ChemicalSpecies[] species;
+    private final double[] xValues;
+    private final double[] yValues;
+    private final double epsilon;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Worker> workers;
+    private NoiseModel noiseModel = NoiseModel.gaussian(0.005, 0.005);
+    private double[] probabilities = {0.025, 0.5, 0.975};
+    private long seed = 42;
+
+    public UncertaintyAnalysis(ChemicalSpecies[] species, double[] xValues, double[] yValues, double epsilon)
+                               throws IllegalArgumentException {
+        this(species, xValues, yValues, epsilon, ForkJoinPool.commonPool());
+    }
+
+    public UncertaintyAnalysis(ChemicalSpecies[] species, double[] xValues, double[] yValues, double epsilon,
+                               ForkJoinPool pool) throws IllegalArgumentException {
+        if ((species == null) || (species.length != 2) || (xValues == null) || (yValues == null)
+        ||  (xValues.length < 2) || (xValues.length != yValues.length) || (pool == null))
+            throw new IllegalArgumentException("Invalid parameters to constructor");
+        this.species = new ChemicalSpecies[]{species[0].clone(), species[1].clone()};
+        this.xValues = xValues.clone();
+        this.yValues = yValues.clone();
+        this.epsilon = epsilon;
+        this.pool = pool;
+        this.workers = ThreadLocal.withInitial(() -> new Worker(this.xValues.length));
+    }
+
+    public NoiseModel getNoiseModel() {
+        return this.noiseModel;
+    }
+
+    public UncertaintyAnalysis setNoiseModel(NoiseModel noiseModel) throws IllegalArgumentException {
+        if (noiseModel == null) throw new IllegalArgumentException("Noise model must not be null");
+        this.noiseModel = noiseModel;
+        return this;
+    }
+
+    public double[] getProbabilities() {
+        return this.probabilities.clone();
+    }
+
+    // the quantiles reported, each strictly between 0 and 1
+    public UncertaintyAnalysis setProbabilities(double... probabilities) throws IllegalArgumentException {
+        if ((probabilities == null) || (probabilities.length == 0))
+            throw new IllegalArgumentException("At least one quantile is needed");
+        for (double probability : probabilities) new StreamingQuantile(probability);
+        this.probabilities = probabilities.clone();
+        return this;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    public UncertaintyAnalysis setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public Result run(double feedTemperature, double refluxMultiplier, int samples)
+                      throws IllegalArgumentException, InterruptedException {
+        if (samples < 1) throw new IllegalArgumentException("At least one sample is needed");
+        if (refluxMultiplier <= 1)
+            throw new IllegalArgumentException("Reflux multiplier must be greater than 1, got " + refluxMultiplier);
+
+        Result result = new Result(this.probabilities, samples);
+        SplittableRandom root = new SplittableRandom(this.seed);
+        Deque<Future<double[][]>> inFlight = new ArrayDeque<>();
+        int window = 2 * this.pool.getParallelism();
+        try {
+            for (int first = 0; first < samples; first += CHUNK_SIZE) {
+                int count = Math.min(CHUNK_SIZE, samples - first);
+                SplittableRandom random = root.split();
+                inFlight.add(this.pool.submit(() -> runChunk(feedTemperature, refluxMultiplier, count, random)));
+                if (inFlight.size() >= window) result.add(await(inFlight.poll()));
+            }
+            while (!inFlight.isEmpty()) result.add(await(inFlight.poll()));
+        } finally {
+            for (Future<double[][]> chunk : inFlight) chunk.cancel(true);
+        }
+        return result;
+    }
+
+    private static double[][] await(Future<double[][]> chunk) throws InterruptedException {
+        try {
+            return chunk.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // stages, reflux ratio and minimum reflux ratio of each sample, all NaN where the column could not be solved
+    private double[][] runChunk(double feedTemperature, double refluxMultiplier, int count, SplittableRandom random) {
+        Worker worker = this.workers.get();
+        double[][] values = new double[3][count];
+        for (int k = 0; k < count; ++k) {
+            System.arraycopy(this.xValues, 0, worker.x, 0, worker.x.length);
+            System.arraycopy(this.yValues, 0, worker.y, 0, worker.y.length);
+            this.noiseModel.perturb(worker.x, worker.y, random);
+            try {
+                CubicSplineInterpolator interpolator = new CubicSplineInterpolator(worker.x, worker.y, this.epsilon,
+                                                                                   worker.workspace);
+                newDistColumn column = new newDistColumn(feedTemperature, this.species, interpolator,
+                                                         refluxMultiplier, StageConsumer.DISCARD);
+                if (!(column.getMinimumRefluxRatio() > 0) || !(column.getRefluxRatio() > 0))
+                    throw new IllegalArgumentException("Reflux ratio is not positive");
+                values[0][k] = Math.ceil(column.getNumberOfTrays());
+                values[1][k] = column.getRefluxRatio();
+                values[2][k] = column.getMinimumRefluxRatio();
+            } catch (IllegalArgumentException e) {
+                values[0][k] = values[1][k] = values[2][k] = Double.NaN;
+            }
+        }
+        return values;
+    }
+
+    // Marsaglia's polar method, SplittableRandom has no nextGaussian before Java 17
+    static double nextGaussian(SplittableRandom random) {
+        double u;
+        double v;
+        double s;
+        do {
+            u = 2 * random.nextDouble() - 1;
+            v = 2 * random.nextDouble() - 1;
+            s = u * u + v * v;
+        } while ((s >= 1) || (s == 0));
+        return u * Math.sqrt(-2 * Math.log(s) / s);
+    }
+
+    private static final class Worker {
+        private final double[] x;
+        private final double[] y;
+        private final SplineWorkspace workspace;
+
+        private Worker(int points) {
+            this.x = new double[points];
+            this.y = new double[points];
+            this.workspace = new SplineWorkspace(points);
+        }
+    }
+
+    /*
+     * Statistics of a run. Stage quantiles are exact (the smallest stage count with at least that fraction of the
+     * solved samples at or below it); reflux quantiles are P-square estimates.
+     */
+    public static final class Result {
+        private final double[] probabilities;
+        private final int samples;
+        private final StreamingQuantile[] refluxRatio;
+        private final StreamingQuantile[] minimumRefluxRatio;
+        private long[] stageCounts = new long[64];
+        private int solved;
+        private double stageMean;
+        private double stageSquares;    // sum of squared deviations from the mean, Welford's method
+        private double refluxMean;
+        private double refluxSquares;
+
+        private Result(double[] probabilities, int samples) {
+            this.probabilities = probabilities.clone();
+            this.samples = samples;
+            this.refluxRatio = new StreamingQuantile[probabilities.length];
+            this.minimumRefluxRatio = new StreamingQuantile[probabilities.length];
+            for (int i = 0; i < probabilities.length; ++i) {
+                this.refluxRatio[i] = new StreamingQuantile(probabilities[i]);
+                this.minimumRefluxRatio[i] = new StreamingQuantile(probabilities[i]);
+            }
+        }
+
+        private void add(double[][] chunk) {
+            for (int k = 0; k < chunk[0].length; ++k) {
+                if (Double.isNaN(chunk[0][k])) continue;
+                // runChunk counts these as failures, they must never reach the estimators
+                if (!(chunk[1][k] > 0) || !(chunk[2][k] > 0))
+                    throw new IllegalStateException("Solved sample with reflux ratio " + chunk[1][k]
+                                                    + " and minimum reflux ratio " + chunk[2][k]);
+                int stages = (int) chunk[0][k];
+                if (stages >= this.stageCounts.length) {
+                    this.stageCounts = Arrays.copyOf(this.stageCounts,
+                                                     Math.max(stages + 1, 2 * this.stageCounts.length));
+                }
+                this.stageCounts[stages]++;
+                this.solved++;
+                double delta = stages - this.stageMean;
+                this.stageMean += delta / this.solved;
+                this.stageSquares += delta * (stages - this.stageMean);
+                delta = chunk[1][k] - this.refluxMean;
+                this.refluxMean += delta / this.solved;
+                this.refluxSquares += delta * (chunk[1][k] - this.refluxMean);
+                for (int i = 0; i < this.probabilities.length; ++i) {
+                    this.refluxRatio[i].add(chunk[1][k]);
+                    this.minimumRefluxRatio[i].add(chunk[2][k]);
+                }
+            }
+        }
+
+        public int getSamples() {
+            return this.samples;
+        }
+
+        public int getSolved() {
+            return this.solved;
+        }
+
+        public int getFailures() {
+            return this.samples - this.solved;
+        }
+
+        public double[] getProbabilities() {
+            return this.probabilities.clone();
+        }
+
+        // one quantile per probability, NaN if no sample was solved
+        public double[] getStageQuantiles() {
+            double[] quantiles = new double[this.probabilities.length];
+            for (int i = 0; i < quantiles.length; ++i) {
+                quantiles[i] = Double.NaN;
+                long needed = (long) Math.ceil(this.probabilities[i] * this.solved);
+                long seen = 0;
+                for (int stages = 0; (this.solved > 0) && (stages < this.stageCounts.length); ++stages) {
+                    seen += this.stageCounts[stages];
+                    if (seen >= Math.max(1, needed)) {
+                        quantiles[i] = stages;
+                        break;
+                    }
+                }
+            }
+            return quantiles;
+        }
+
+        public double[] getRefluxRatioQuantiles() {
+            return quantiles(this.refluxRatio);
+        }
+
+        public double[] getMinimumRefluxRatioQuantiles() {
+            return quantiles(this.minimumRefluxRatio);
+        }
+
+        private static double[] quantiles(StreamingQuantile[] estimators) {
+            double[] quantiles = new double[estimators.length];
+            for (int i = 0; i < quantiles.length; ++i) quantiles[i] = estimators[i].getQuantile();
+            return quantiles;
+        }
+
+        // number of solved samples that needed exactly this many stages
+        public long getStageCount(int stages) {
+            return ((stages < 0) || (stages >= this.stageCounts.length)) ? 0 : this.stageCounts[stages];
+        }
+
+        public double getStageMean() {
+            return (this.solved == 0) ? Double.NaN : this.stageMean;
+        }
+
+        public double getStageStandardDeviation() {
+            return (this.solved < 2) ? Double.NaN : Math.sqrt(this.stageSquares / (this.solved - 1));
+        }
+
+        public double getRefluxRatioMean() {
+            return (this.solved == 0) ? Double.NaN : this.refluxMean;
+        }
+
+        public double getRefluxRatioStandardDeviation() {
+            return (this.solved < 2) ? Double.NaN : Math.sqrt(this.refluxSquares / (this.solved - 1));
+        }
+
+        public String toString() {
+            return this.solved + " of " + this.samples + " samples solved; stages " + getStageMean() + " +/- "
+                   + getStageStandardDeviation() + ", quantiles " + Arrays.toString(this.probabilities)
+                   + " of stages " + Arrays.toString(getStageQuantiles())
+                   + ", reflux ratio " + Arrays.toString(getRefluxRatioQuantiles())
+                   + ", minimum reflux ratio " + Arrays.toString(getMinimumRefluxRatioQuantiles());
+        }
+    }
+}
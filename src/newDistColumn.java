@@ -1,18 +1,17 @@
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class newDistColumn {
 
+    private static final int MAX_TRAYS = 1000;
+
     private ChemicalSpecies mostVolatileComponent;
     private ChemicalSpecies leastVolatileComponent;
-    private CubicSplineInterpolator interpolator;
-    private LinearFunction qLine;
-    private LinearFunction rectifyingLine;
-    private LinearFunction enrichingLine;
+    private EquilibriumModel interpolator;
+    private QLineFunction qLine;
+    private OperatingLine rectifyingLine;
+    private OperatingLine enrichingLine;
     private double feedFlowRate; // must be less than max
     private double xFeed;
     private double distillateFlowRate;
@@ -20,10 +19,46 @@ public class newDistColumn {
     private double numberOfTrays;
     private double xDistillate;
     private double xBottoms;
+    private double refluxMultiplier;
+    private double minimumRefluxRatio;
+    private double refluxRatio;
+    private int feedTray;
+    private TrajectoryBuffer trajectory;    // null when the stages were streamed to a caller's consumer
 
     public newDistColumn(double feedTemperature, EquilibriumData data, int ventureNumber, double epsilon) throws IOException {
-        ChemicalSpecies[] chemicalSpecies;
-        chemicalSpecies = ChemicalSpecies.importDataFromCSV("RawMaterialPhysicalProperties", ventureNumber);
+        this(feedTemperature,
+             ChemicalSpecies.importDataFromCSV("RawMaterialPhysicalProperties", ventureNumber),
+             EquilibriumModel.select(InterpolatorCache.getDefault().getInterpolator(data.getXData(ventureNumber),
+                                                                                    data.getYData(ventureNumber),
+                                                                                    epsilon),
+                                     ConstantVolatilityModel.DEFAULT_TOLERANCE),
+             1.5);
+        System.out.println("The Enriching Line is : " + this.enrichingLine);
+        System.out.println("The Q line is : " + this.qLine);
+        System.out.println("The Rectifying line is : " + this.rectifyingLine);
+        this.exportToCSV("DistillationColumnData.csv", this.trajectory);
+        System.out.println("Number of equilibrium stages: " + Math.ceil(this.numberOfTrays));
+    }
+    // this was a git test
+
+    /*
+     * Solves the column against an already fitted equilibrium model (a spline, or a constant relative volatility
+     * where that describes the data, see EquilibriumModel.select) without touching the file system, so many columns
+     * can share one model. The real reflux ratio is refluxMultiplier times the minimum reflux ratio. The
+     * staircase is kept in a TrajectoryBuffer, see getTrajectory().
+     */
+    public newDistColumn(double feedTemperature, ChemicalSpecies[] chemicalSpecies, EquilibriumModel interpolator,
+                         double refluxMultiplier) throws IllegalArgumentException {
+        this(feedTemperature, chemicalSpecies, interpolator, refluxMultiplier, null);
+    }
+
+    // as above, but every stage goes to stages as it is stepped and the staircase is not kept
+    public newDistColumn(double feedTemperature, ChemicalSpecies[] chemicalSpecies, EquilibriumModel interpolator,
+                         double refluxMultiplier, StageConsumer stages) throws IllegalArgumentException {
+        if ((chemicalSpecies == null) || (chemicalSpecies.length != 2) || (interpolator == null))
+            throw new IllegalArgumentException("A column needs two species and an equilibrium curve");
+        if (refluxMultiplier <= 1)
+            throw new IllegalArgumentException("Reflux multiplier must be greater than 1, got " + refluxMultiplier);
         if (chemicalSpecies[0].getNormalBoilingPoint() < chemicalSpecies[1].getNormalBoilingPoint()) {
             this.mostVolatileComponent = chemicalSpecies[0].clone();
             this.leastVolatileComponent = chemicalSpecies[1].clone();
@@ -31,92 +66,100 @@ public class newDistColumn {
             this.leastVolatileComponent = chemicalSpecies[0].clone();
             this.mostVolatileComponent = chemicalSpecies[1].clone();
         }
-        this.interpolator = new CubicSplineInterpolator(data.getXData(ventureNumber), data.getYData(ventureNumber), epsilon);
+        this.interpolator = interpolator;
+        this.refluxMultiplier = refluxMultiplier;
         this.feedFlowRate = mostVolatileComponent.getMaxFeedRate();
         this.xFeed = mostVolatileComponent.getxFeed();
         this.xDistillate = mostVolatileComponent.getDistillateFractionRequired();
         this.xBottoms = mostVolatileComponent.getBottomsFractionRequired();
-        this.distillateFlowRate = (feedFlowRate * (xFeed - xBottoms)) / (xDistillate + xBottoms) ;
+        this.distillateFlowRate = (feedFlowRate * (xFeed - xBottoms)) / (xDistillate - xBottoms); // light component balance
         this.bottomsFlowRate = feedFlowRate - distillateFlowRate;
-        List<double[]> trayPoints = solveColumn(feedTemperature);
-        this.numberOfTrays = trayPoints.size() / 2.0;
-        System.out.println(trayPoints.size() / 2);
-        this.exportToCSV("DistillationColumnData.csv", trayPoints);
-        System.out.println("Number of equilibrium stages: " + Math.ceil(this.numberOfTrays));
+        if (stages == null) {
+            this.trajectory = new TrajectoryBuffer();
+            stages = this.trajectory;
+        }
+        this.numberOfTrays = solveColumn(feedTemperature, stages);
     }
-    // this was a git test
 
-    public List<double[]> solveColumn(double feedTemp) {
+    // returns the number of equilibrium stages
+    public int solveColumn(double feedTemp, StageConsumer stages) {
+        long solveStart = SolverMetrics.COLUMN_SOLVE_TIME.start();
 
         double Q = calculateQ(feedTemp);
 
         QLineFunction qLine = new QLineFunction(Q, xFeed);
 
-        double intX = this.interpolator.QLInt(qLine, xFeed);
+        long refluxStart = SolverMetrics.MINIMUM_REFLUX_TIME.start();
+        MinimumReflux minimumReflux = new MinimumReflux(this.interpolator, qLine, xFeed, xDistillate);
+        SolverMetrics.MINIMUM_REFLUX_TIME.stop(refluxStart);
 
-        OperatingLine enrichingLine = cELC(intX);
-
-        double newIntX = intX;
-
-        while (!CubicSplineInterpolator.floatEqualLessThan( // sum ting wong
-                this.interpolator.ELInt(enrichingLine, this.xDistillate),
-                newIntX)) {
-            newIntX -= 0.0001;
-            enrichingLine = cELC(newIntX);
-            System.out.println("newIntX = " + newIntX);
-        }
+        double idealRFR = minimumReflux.getRefluxRatio(); // MinimumReflux has already rejected a non-positive ratio
 
-        double idealRFR = (xDistillate / enrichingLine.getIntercept()) - 1;
+        double rRFR = this.refluxMultiplier * idealRFR;
+        this.minimumRefluxRatio = idealRFR;
+        this.refluxRatio = rRFR;
 
-        double rRFR = 1.5 * idealRFR;
-
-        enrichingLine = new OperatingLine(xDistillate, 0, xDistillate, (xDistillate / (rRFR + 1)));
-        System.out.println(enrichingLine);
+        OperatingLine enrichingLine = new OperatingLine(xDistillate, 0, xDistillate, (xDistillate / (rRFR + 1)));
 
         double intersectionPoint = qLine.calculateIntersectionPointX(enrichingLine);
-        System.out.println("Intersection point: " + intersectionPoint);
 
         OperatingLine rectifiyngLine = cRLC(intersectionPoint, qLine.interpolateY(intersectionPoint));
 
-        System.out.println("The Enriching Line is : " + enrichingLine.toString());
-        System.out.println("The Q line is : " + qLine.toString());
-        System.out.println("The Rectifying line is : " + rectifiyngLine.toString());
-
+        this.qLine = qLine;
+        this.enrichingLine = enrichingLine;
+        this.rectifyingLine = rectifiyngLine;
 
-        List<double[]> numTray = this.calcNumTray(enrichingLine, rectifiyngLine,intersectionPoint);
-        System.out.println("New number of trays is : " + numTray);
+        int numTray = this.calcNumTray(enrichingLine, rectifiyngLine, intersectionPoint, stages);
+        // the first stage already below the feed means the enriching section was never used
+        if (this.feedTray < 1)
+            throw new IllegalArgumentException("No stage lies above the feed, feed tray " + this.feedTray);
+        SolverMetrics.COLUMN_SOLVES.increment();
+        SolverMetrics.COLUMN_SOLVE_TIME.stop(solveStart);
         return numTray;
     }
 
     public List<double[]> calcNumTray(OperatingLine enrichingLine, OperatingLine rectifyingLine, double intersectionX) {
+        TrajectoryBuffer trayPoints = new TrajectoryBuffer();
+        calcNumTray(enrichingLine, rectifyingLine, intersectionX, trayPoints);
+        return trayPoints.toList();
+    }
+
+    // steps off the stages from the top of the column, handing each one to stages, and returns how many there are
+    public int calcNumTray(OperatingLine enrichingLine, OperatingLine rectifyingLine, double intersectionX,
+                           StageConsumer stages) {
         int trayNumber = 0;
         double x = xDistillate;
         double y = xDistillate;
         int feedTray = 0;
-        List<double[]> trayPoints = new ArrayList<>();
-        System.out.println("Data Point (x = " + x + " y = " + y + ")");
-        do {
-            ++trayNumber;
-            double[] dataPoint;
-            // increment tray and move across towards equilibrium curve
-            x = this.interpolator.interpolateX(y);
-            dataPoint = new double[]{x, y};
-            trayPoints.add(dataPoint);
-            //System.out.println("Data Point (x = " + x + " y = " + y + ")");
-
-            // Calculates the new Y value on either the enriching or rectifying line depending on which side of feed tray
-            if (x > intersectionX) {
-                ++feedTray; // Feed tray gets incremented until the new point is on the rectifying line
-                y = enrichingLine.interpolateY(x);
-            } else {
-                y = rectifyingLine.interpolateY(x);
-            }
-            dataPoint = new double[]{x, y};
-            trayPoints.add(dataPoint);
-            //System.out.println("Data Point (x = " + x + " y = " + y + ")");
+        SegmentLocator.Cursor cursor = this.interpolator.yCursor(); // y only ever decreases while stepping down the column
+        long start = SolverMetrics.TRAY_STEPPING_TIME.start();
+        try {
+            do {
+                ++trayNumber;
+                // increment tray and move across towards equilibrium curve
+                x = this.interpolator.interpolateX(y, cursor);
+                double yStage = y;
+
+                // Calculates the new Y value on either the enriching or rectifying line depending on which side of
+                // feed tray
+                if (x > intersectionX) {
+                    ++feedTray; // Feed tray gets incremented until the new point is on the rectifying line
+                    y = enrichingLine.interpolateY(x);
+                } else {
+                    y = rectifyingLine.interpolateY(x);
+                }
+                stages.accept(trayNumber, x, yStage, y);
 
-        } while (x > this.xBottoms);
-        return trayPoints;
+                if (trayNumber > MAX_TRAYS)
+                    throw new IllegalArgumentException("Column did not reach the bottoms composition in " + MAX_TRAYS
+                                                       + " trays");
+            } while (x > this.xBottoms);
+        } finally {
+            SolverMetrics.TRAY_STEPPING_TIME.stop(start);
+        }
+        this.feedTray = feedTray;
+        SolverMetrics.TRAYS_PER_COLUMN.record(trayNumber);
+        return trayNumber;
     }
 
     public OperatingLine cELC(double QeQIntersectionPoint) {
@@ -129,37 +172,85 @@ public class newDistColumn {
     }
 
     public double calculateQ(double feedTemp) {
+        return calculateQ(this.mostVolatileComponent, this.leastVolatileComponent, feedTemp);
+    }
+
+    // feed quality from the species data, shared with the shortcut estimate so both see the same q-line
+    static double calculateQ(ChemicalSpecies mostVolatileComponent, ChemicalSpecies leastVolatileComponent,
+                             double feedTemp) {
         double q;
-        double averageBoilingPoint = (this.mostVolatileComponent.getNormalBoilingPoint()
-                + this.leastVolatileComponent.getNormalBoilingPoint())
+        double averageBoilingPoint = (mostVolatileComponent.getNormalBoilingPoint()
+                + leastVolatileComponent.getNormalBoilingPoint())
                 / 2;
-        double averageHeatCapacity = (this.mostVolatileComponent.getHeatCapacity()
-                + this.leastVolatileComponent.getHeatCapacity()) / 2;
-        double latentHeat = this.mostVolatileComponent.getLatentHeat();
+        double averageHeatCapacity = (mostVolatileComponent.getHeatCapacity()
+                + leastVolatileComponent.getHeatCapacity()) / 2;
+        double latentHeat = mostVolatileComponent.getLatentHeat();
         q = (latentHeat + (feedTemp - averageBoilingPoint) * averageHeatCapacity) / latentHeat;
-        System.out.println("The value of Q is : " + q);
         return q;
     }
 
     public void exportToCSV(String fileName, List<double[]> dataPoints) throws IOException {
+        try (ResultWriter writer = new ResultWriter(fileName)) {
+            for (double[] dataPoint : dataPoints) {
+                writer.writeRow(dataPoint[0], dataPoint[1]);
+            }
+        }
+        System.out.println("Data was written to the file " + fileName);
+    }
 
-        File file = new File(fileName);
-        if (!file.exists()) {
-            file.createNewFile();
+    public void exportToCSV(String fileName, TrajectoryBuffer dataPoints) throws IOException {
+        try (ResultWriter writer = new ResultWriter(fileName)) {
+            for (int i = 0; i < dataPoints.size(); ++i) {
+                writer.writeRow(dataPoints.getX(i), dataPoints.getY(i));
+            }
         }
-        FileWriter writer = new FileWriter(file);
-        BufferedWriter bw = new BufferedWriter(writer);
+        System.out.println("Data was written to the file " + fileName);
+    }
 
-        String dataPointX;
-        String dataPointY;
+    public double getNumberOfTrays() {
+        return this.numberOfTrays;
+    }
 
-        for (double[] dataPoint : dataPoints) {
-            dataPointX = Double.toString(dataPoint[0]);
-            dataPointY = Double.toString(dataPoint[1]);
-            bw.append(dataPointX).append(",").append(dataPointY).append("\n");
-        }
+    public int getFeedTray() {
+        return this.feedTray;
+    }
 
-        bw.close();
-        System.out.println("Data was written to the file " + fileName);
+    public double getRefluxRatio() {
+        return this.refluxRatio;
+    }
+
+    public double getMinimumRefluxRatio() {
+        return this.minimumRefluxRatio;
+    }
+
+    public double getDistillateFlowRate() {
+        return this.distillateFlowRate;
+    }
+
+    // lines are immutable, so they are handed out without copying
+    public OperatingLine getEnrichingLine() {
+        return this.enrichingLine;
+    }
+
+    public OperatingLine getRectifyingLine() {
+        return this.rectifyingLine;
+    }
+
+    public QLineFunction getQLine() {
+        return this.qLine;
+    }
+
+    // the (x, y) corners of the staircase, empty if the stages were streamed to a consumer
+    public List<double[]> getTrayPoints() {
+        return (this.trajectory == null) ? new ArrayList<>() : this.trajectory.toList();
+    }
+
+    // a copy of the staircase, or null if the stages were streamed to a consumer
+    public TrajectoryBuffer getTrajectory() {
+        return (this.trajectory == null) ? null : this.trajectory.copy();
+    }
+
+    public double getBottomsFlowRate() {
+        return this.bottomsFlowRate;
     }
 }